@@ -0,0 +1,39 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawler-settings")
+public class CrawlerSettings {
+    private int maxConcurrency = Runtime.getRuntime().availableProcessors();
+    private long requestDelayMs = 100;
+    private int connectionTimeoutMs = 5000;
+    private int maxQueuedUrlsPerHost = 100_000;
+    private int visitedMaxUrls = 2_000_000;
+    private boolean visitedBloomFilter = true;
+    private double visitedBloomFalsePositiveRate = 0.01;
+    private int parseThreads = 2;
+    private int lemmatizeThreads = Runtime.getRuntime().availableProcessors();
+    private int persistThreads = 4;
+    private int stageQueueCapacity = 256;
+    private int checkpointIntervalSeconds = 60;
+    private int shutdownTimeoutSeconds = 30;
+    private boolean respectRobots = true;
+    private boolean sitemapSeeding = true;
+    private int maxSitemaps = 50;
+    private long maxCrawlDelayMs = 30_000;
+    private int nearDuplicateDistance = 3;
+    private int nearDuplicateCapacity = 100_000;
+    private int nearDuplicateMinWords = 50;
+    private int indexWriteBatchSize = 5_000;
+    private long indexFlushIntervalMs = 1_000;
+    private long lemmaFlushIntervalMs = 5_000;
+    private long statisticsFlushIntervalMs = 5_000;
+    private String userAgent = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
+    private String referrer = "http://www.google.com";
+}
@@ -0,0 +1,23 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "index-store")
+public class IndexStoreSettings {
+    /** jdbc - леммы и индекс в PostgreSQL, mapped - во встроенных файлах, отображаемых в память. */
+    private String type = "jdbc";
+    private String directory = "data/index";
+    /** Искать по снимку индекса в памяти, который пересобирается после изменений индекса. */
+    private boolean searchSnapshot = false;
+    /** Через сколько после изменения индекса пересобирать снимок; изменения за это время собираются вместе. */
+    private long snapshotRebuildDelayMs = 30_000;
+    /** Сколько сегментов одного уровня размера объединяются в один (для type: mapped). */
+    private int segmentMergeFactor = 10;
+    private long mergeIntervalMs = 10_000;
+}
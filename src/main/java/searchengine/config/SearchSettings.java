@@ -0,0 +1,19 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchSettings {
+    /** Сколько найденных страниц суммарно хранит кеш результатов поиска, 0 - кеш выключен. */
+    private int resultCacheMaxPages = 200_000;
+    /** Насыщение BM25 по числу вхождений леммы на странице. */
+    private double bm25K1 = 1.2;
+    /** Доля нормировки BM25 по длине страницы: 0 - длина не учитывается, 1 - полная нормировка. */
+    private double bm25B = 0.75;
+}
@@ -3,6 +3,8 @@ package searchengine.controllers;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 import searchengine.dto.indexing.IndexingResponse;
+import searchengine.dto.indexing.PipelineStatisticsResponse;
+import searchengine.dto.search.SearchCacheStatisticsResponse;
 import searchengine.dto.search.SearchResponse;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.services.interfaces.IndexingService;
@@ -28,8 +30,9 @@ public class ApiController {
     }
 
     @GetMapping("/startIndexing")
-    public IndexingResponse startIndexing() {
-        return indexingService.startIndexing();
+    public IndexingResponse startIndexing(
+            @RequestParam(name = "incremental", defaultValue = "false") boolean incremental) {
+        return indexingService.startIndexing(incremental);
     }
 
     @GetMapping("/stopIndexing")
@@ -37,12 +40,22 @@ public class ApiController {
         return indexingService.stopIndexing();
     }
 
+    @GetMapping("/resumeIndexing")
+    public IndexingResponse resumeIndexing() {
+        return indexingService.resumeIndexing();
+    }
+
     @PostMapping("/indexPage")
     public IndexingResponse indexSinglePage(@RequestBody String url) {
         url = url.replace("url=", "");
         return indexingService.indexSinglePage(URLDecoder.decode(url, StandardCharsets.UTF_8));
     }
 
+    @GetMapping("/pipelineStatistics")
+    public PipelineStatisticsResponse pipelineStatistics() {
+        return indexingService.getPipelineStatistics();
+    }
+
     @GetMapping("/search")
     public SearchResponse search(
             @RequestParam(name = "query") String query,
@@ -52,5 +65,10 @@ public class ApiController {
         return searchService.search(query, siteUrl, offset, limit);
     }
 
+    @GetMapping("/searchCacheStatistics")
+    public SearchCacheStatisticsResponse searchCacheStatistics() {
+        return searchService.getCacheStatistics();
+    }
+
 
 }
@@ -0,0 +1,12 @@
+package searchengine.dto.indexing;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class PipelineStatisticsResponse {
+    private Boolean result;
+    private Boolean indexing;
+    private List<StageStatistics> stages;
+}
@@ -0,0 +1,14 @@
+package searchengine.dto.indexing;
+
+import lombok.Data;
+
+@Data
+public class StageStatistics {
+    private String name;
+    private Integer threads;
+    private Integer busyThreads;
+    private Integer queueSize;
+    private Integer queueCapacity;
+    private Long processed;
+    private Double throughput;
+}
@@ -0,0 +1,16 @@
+package searchengine.dto.search;
+
+import lombok.Data;
+
+@Data
+public class SearchCacheStatisticsResponse {
+    private Boolean result;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long evictions;
+    private long invalidations;
+    private int entries;
+    private long cachedPages;
+    private long generation;
+}
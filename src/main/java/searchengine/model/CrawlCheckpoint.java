@@ -0,0 +1,36 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+@Entity
+@Getter
+@Setter
+@RequiredArgsConstructor
+@Table(name = "crawl_checkpoint")
+public class CrawlCheckpoint {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false)
+    private int id;
+
+    @OneToOne
+    @JoinColumn(name = "site_id", nullable = false, unique = true, referencedColumnName = "id")
+    private Site site;
+
+    @Column(name = "frontier", nullable = false, columnDefinition = "BYTEA")
+    private byte[] frontier;
+
+    @Column(name = "visited", nullable = false, columnDefinition = "BYTEA")
+    private byte[] visited;
+
+    @Column(name = "incremental", nullable = false)
+    private boolean incremental;
+
+    @Column(name = "saved_at", nullable = false, columnDefinition = "DATETIME")
+    private Instant savedAt;
+}
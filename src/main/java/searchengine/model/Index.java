@@ -19,6 +19,10 @@ public class Index {
     @Column(name = "id", nullable = false)
     private int id;
 
+    @ManyToOne
+    @JoinColumn(name = "site_id", nullable = false, referencedColumnName = "id")
+    private Site site;
+
     @ManyToOne
     @JoinColumn(name = "page_id", nullable = false, referencedColumnName = "id")
     private Page page;
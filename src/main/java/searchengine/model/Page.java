@@ -5,6 +5,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 
 import javax.persistence.*;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -29,9 +30,48 @@ public class Page {
     @Column(name = "code", nullable = false)
     private int code;
 
-    @Column(name = "content", nullable = false, columnDefinition = "MEDIUMTEXT")
+    /**
+     * HTML страницы. Хранится сжатым в {@link PageContent}, в сущности заполняется только при обходе.
+     */
+    @Transient
     private String content;
 
+    @Column(name = "title", columnDefinition = "TEXT")
+    private String title;
+
+    @Column(name = "text", columnDefinition = "TEXT")
+    private String text;
+
+    @Column(name = "simhash")
+    private Long simhash;
+
+    @Column(name = "duplicate_of")
+    private Integer duplicateOf;
+
+    /** Число слов страницы, у которых нашлась лемма: длина страницы для BM25. */
+    @Column(name = "word_count", nullable = false)
+    private int wordCount;
+
+    /**
+     * Позиции слов страницы по леммам в формате {@link searchengine.services.search.LemmaOffsets}.
+     * У страниц, проиндексированных до появления колонки, отсутствует.
+     */
+    @Column(name = "lemma_offsets")
+    private byte[] lemmaOffsets;
+
+    @Column(name = "etag", columnDefinition = "VARCHAR(255)")
+    private String etag;
+
+    @Column(name = "last_modified", columnDefinition = "VARCHAR(64)")
+    private String lastModified;
+
+    @Column(name = "content_hash", columnDefinition = "VARCHAR(64)")
+    private String contentHash;
+
+    /** Когда обход последний раз дошел до страницы, в том числе если она не изменилась. */
+    @Column(name = "crawled_at", columnDefinition = "DATETIME")
+    private Instant crawledAt;
+
     @OneToMany(mappedBy = "page")
     private List<Index> indexes = new ArrayList<>();
 
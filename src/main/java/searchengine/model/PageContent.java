@@ -0,0 +1,34 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+/**
+ * HTML страницы, хранится отдельно от {@link Page} и загружается только по запросу.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "page_content")
+public class PageContent {
+    @Id
+    @Column(name = "page_id", nullable = false)
+    private int pageId;
+
+    @Column(name = "site_id", nullable = false)
+    private int siteId;
+
+    @Convert(converter = CompressedTextConverter.class)
+    @Column(name = "body", nullable = false, columnDefinition = "BYTEA")
+    private String body;
+
+    public PageContent(int pageId, int siteId, String body) {
+        this.pageId = pageId;
+        this.siteId = siteId;
+        this.body = body;
+    }
+}
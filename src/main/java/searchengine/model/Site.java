@@ -41,6 +41,20 @@ public class Site {
     @Column(name = "name", nullable = false, columnDefinition = "VARCHAR(255)")
     private String name;
 
+    /** Начало текущего или последнего обхода сайта, не меняется при продолжении с контрольной точки. */
+    @Column(name = "crawl_started_at", columnDefinition = "DATETIME")
+    private Instant crawlStartedAt;
+
+    /** Обновляется только через {@link searchengine.services.storage.SiteCounters}. */
+    @Column(name = "page_count", nullable = false, insertable = false, updatable = false)
+    private int pageCount;
+
+    @Column(name = "lemma_count", nullable = false, insertable = false, updatable = false)
+    private int lemmaCount;
+
+    @Column(name = "word_count", nullable = false, insertable = false, updatable = false)
+    private long wordCount;
+
     @OneToMany(mappedBy = "site")
     private Set<Page> pages = new HashSet<>();
 
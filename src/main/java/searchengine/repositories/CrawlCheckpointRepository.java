@@ -0,0 +1,16 @@
+package searchengine.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.CrawlCheckpoint;
+import searchengine.model.Site;
+
+import java.util.Optional;
+
+public interface CrawlCheckpointRepository extends JpaRepository<CrawlCheckpoint, Integer> {
+
+    Optional<CrawlCheckpoint> findBySite(Site site);
+
+    @Transactional
+    void deleteBySite(Site site);
+}
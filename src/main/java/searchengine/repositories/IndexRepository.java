@@ -1,16 +1,21 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import searchengine.model.Index;
 import searchengine.model.Lemma;
-import searchengine.model.Page;
+import searchengine.model.Site;
 
 import java.util.List;
 
 public interface IndexRepository extends JpaRepository<Index, Integer> {
 
-    void deleteByPage(Page existingPage);
+    List<Index> findAllBySiteAndLemma(Site site, Lemma lemma);
 
-    List<Index> findAllByLemma(Lemma lemma);
+    List<Index> findAllBySiteAndPageId(Site site, int pageId);
+
+    @Query("SELECT i.page.id, i.rank FROM Index i WHERE i.site = :site AND i.lemma.lemma = :lemma")
+    List<Object[]> findPostings(@Param("site") Site site, @Param("lemma") String lemma);
 
 }
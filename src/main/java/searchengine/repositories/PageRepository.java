@@ -1,17 +1,40 @@
 package searchengine.repositories;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.Page;
 import searchengine.model.Site;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 public interface PageRepository extends JpaRepository<Page, Integer> {
     boolean existsByPath(String url);
 
-    void deleteAllBySite(Site siteEntity);
-
     Page findByPath(String path);
 
+    Page findBySiteAndPath(Site site, String path);
+
     List<Page> findAllBySite(Site site);
+
+    List<Page> findAllBySiteInAndIdIn(Collection<Site> sites, Collection<Integer> ids);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Page p SET p.crawledAt = :time WHERE p.id = :id")
+    void markCrawled(@Param("id") int id, @Param("time") Instant time);
+
+    /**
+     * Страницы сайта, до которых обход не доходил с указанного момента.
+     */
+    @Query("SELECT p FROM Page p WHERE p.site = :site AND (p.crawledAt IS NULL OR p.crawledAt < :since)")
+    List<Page> findNotCrawledSince(@Param("site") Site site, @Param("since") Instant since);
+
+    @Query("SELECT p.id, p.simhash FROM Page p WHERE p.site = :site AND p.simhash IS NOT NULL AND p.duplicateOf IS NULL ORDER BY p.id DESC")
+    List<Object[]> findRecentFingerprints(@Param("site") Site site, Pageable pageable);
 }
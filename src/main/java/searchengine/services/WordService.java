@@ -25,14 +25,34 @@ public class WordService {
      * @return ключ является леммой, а значение количеством найденных лемм
      */
     public Map<String, Integer> collectLemmas(String text) {
-        String[] words = arrayContainsRussianWords(text);
-        HashMap<String, Integer> lemmas = new HashMap<>();
+        return countLemmas(collectLemmaOffsets(text));
+    }
 
-        for (String word : words) {
-            if (word.isBlank()) {
+    /**
+     * Находит леммы слов текста вместе с позициями этих слов.
+     * Номер слова считается по всем словам текста, включая служебные, у которых лемма не берется.
+     *
+     * @param text текст из которого будут выбираться леммы
+     * @return ключ является леммой, а значение - тройки (номер слова, начало, конец) слов с ней по возрастанию
+     */
+    public Map<String, int[]> collectLemmaOffsets(String text) {
+        Map<String, OffsetBuffer> offsets = new HashMap<>();
+        int length = text != null ? text.length() : 0;
+        int position = 0;
+        int wordNumber = -1;
+        while (position < length) {
+            while (position < length && !isRussianLetter(text.charAt(position))) {
+                position++;
+            }
+            int start = position;
+            while (position < length && isRussianLetter(text.charAt(position))) {
+                position++;
+            }
+            if (start == position) {
                 continue;
             }
-
+            wordNumber++;
+            String word = text.substring(start, position).toLowerCase(Locale.ROOT);
             List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
             if (anyWordBaseBelongToParticle(wordBaseForms)) {
                 continue;
@@ -43,18 +63,22 @@ public class WordService {
                 continue;
             }
 
-            String normalWord = normalForms.get(0);
-
-            if (lemmas.containsKey(normalWord)) {
-                lemmas.put(normalWord, lemmas.get(normalWord) + 1);
-            } else {
-                lemmas.put(normalWord, 1);
-            }
+            offsets.computeIfAbsent(normalForms.get(0), lemma -> new OffsetBuffer()).add(wordNumber, start, position);
         }
 
-        return lemmas;
+        Map<String, int[]> result = new HashMap<>();
+        offsets.forEach((lemma, buffer) -> result.put(lemma, buffer.toArray()));
+        return result;
     }
 
+    /**
+     * @return количество слов каждой леммы по их позициям
+     */
+    public static Map<String, Integer> countLemmas(Map<String, int[]> offsets) {
+        Map<String, Integer> lemmas = new HashMap<>();
+        offsets.forEach((lemma, triples) -> lemmas.put(lemma, triples.length / 3));
+        return lemmas;
+    }
 
     /**
      * @param text текст из которого собираем все леммы
@@ -95,6 +119,11 @@ public class WordService {
                 .split("\\s+");
     }
 
+    private static boolean isRussianLetter(char symbol) {
+        char lower = Character.toLowerCase(symbol);
+        return lower >= 'а' && lower <= 'я';
+    }
+
     private boolean isCorrectWordForm(String word) {
         List<String> wordInfo = luceneMorphology.getMorphInfo(word);
         for (String morphInfo : wordInfo) {
@@ -104,4 +133,22 @@ public class WordService {
         }
         return true;
     }
+
+    private static class OffsetBuffer {
+        private int[] values = new int[6];
+        private int size;
+
+        void add(int wordNumber, int start, int end) {
+            if (size + 3 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = wordNumber;
+            values[size++] = start;
+            values[size++] = end;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
 }
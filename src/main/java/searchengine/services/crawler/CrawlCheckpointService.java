@@ -0,0 +1,105 @@
+package searchengine.services.crawler;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.model.CrawlCheckpoint;
+import searchengine.model.Site;
+import searchengine.repositories.CrawlCheckpointRepository;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Сохраняет и восстанавливает состояние обхода сайтов: очередь ссылок
+ * (сжатый gzip список строк) и отпечатки посещенных ссылок (по 8 байт).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CrawlCheckpointService {
+    private final CrawlCheckpointRepository checkpointRepository;
+
+    public void save(HostQueue host, boolean incremental) {
+        HostSnapshot snapshot = host.snapshot();
+        Site site = host.getSite();
+        CrawlCheckpoint checkpoint = checkpointRepository.findBySite(site).orElseGet(CrawlCheckpoint::new);
+        checkpoint.setSite(site);
+        checkpoint.setFrontier(encodeUrls(snapshot.getFrontier()));
+        checkpoint.setVisited(encodeFingerprints(snapshot.getVisitedFingerprints()));
+        checkpoint.setIncremental(incremental);
+        checkpoint.setSavedAt(Instant.now());
+        checkpointRepository.save(checkpoint);
+        log.debug("Контрольная точка сайта {}: {} ссылок в очереди, {} посещено", site.getUrl(),
+                snapshot.getFrontier().size(), snapshot.getVisitedFingerprints().length);
+    }
+
+    public List<CrawlCheckpoint> findAll() {
+        return checkpointRepository.findAll();
+    }
+
+    /**
+     * Создает очередь хоста с восстановленными посещенными ссылками и очередью обхода.
+     */
+    public HostQueue restore(CrawlCheckpoint checkpoint, VisitedUrlSet visited, long delayMs, int capacity) {
+        visited.restore(decodeFingerprints(checkpoint.getVisited()));
+        HostQueue host = new HostQueue(checkpoint.getSite(), delayMs, capacity, visited);
+        host.restore(decodeUrls(checkpoint.getFrontier()));
+        return host;
+    }
+
+    public void delete(Site site) {
+        checkpointRepository.deleteBySite(site);
+    }
+
+    public void deleteAll() {
+        checkpointRepository.deleteAllInBatch();
+    }
+
+    private static byte[] encodeUrls(List<String> urls) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            for (String url : urls) {
+                writer.write(url);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<String> decodeUrls(byte[] data) {
+        List<String> urls = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(data)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    urls.add(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return urls;
+    }
+
+    private static byte[] encodeFingerprints(long[] fingerprints) {
+        ByteBuffer buffer = ByteBuffer.allocate(fingerprints.length * Long.BYTES);
+        buffer.asLongBuffer().put(fingerprints);
+        return buffer.array();
+    }
+
+    private static long[] decodeFingerprints(byte[] data) {
+        long[] fingerprints = new long[data.length / Long.BYTES];
+        ByteBuffer.wrap(data).asLongBuffer().get(fingerprints);
+        return fingerprints;
+    }
+}
@@ -0,0 +1,27 @@
+package searchengine.services.crawler;
+
+import java.io.IOException;
+import java.util.List;
+
+public interface CrawlHandler {
+
+    /**
+     * Готовит хост к обходу: настраивает правила и задержку, находит начальные ссылки.
+     * Выполняется до первой загрузки страницы хоста.
+     */
+    List<String> seed(HostQueue host);
+
+    /**
+     * Загружает страницу. Вызывается не чаще, чем позволяет задержка хоста.
+     *
+     * @return загруженная страница или null, если обрабатывать нечего
+     */
+    PageWork fetch(HostQueue host, String url) throws IOException;
+
+    /**
+     * Передает загруженную страницу на дальнейшую обработку. Слот загрузки хоста
+     * к этому моменту уже освобожден. После вызова обработчик сам отвечает
+     * за {@link HostQueue#markDone(String)}.
+     */
+    void handOff(PageWork work) throws InterruptedException;
+}
@@ -0,0 +1,124 @@
+package searchengine.services.crawler;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.CrawlerSettings;
+import searchengine.dto.indexing.StageStatistics;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Конвейер индексации: загрузка → разбор → лемматизация → сохранение.
+ * Сетевая, вычислительная и работа с базой выполняются в разных пулах,
+ * этапы связаны ограниченными очередями.
+ */
+@Slf4j
+public class CrawlPipeline implements CrawlHandler {
+    private final PageProcessor processor;
+    private final CrawlScheduler scheduler;
+    private final PipelineStage<PageWork> parseStage;
+    private final PipelineStage<PageWork> lemmatizeStage;
+    private final PipelineStage<PageWork> persistStage;
+
+    public CrawlPipeline(CrawlerSettings settings, PageProcessor processor) {
+        this.processor = processor;
+        int capacity = settings.getStageQueueCapacity();
+        this.persistStage = new PipelineStage<>("persist", settings.getPersistThreads(), capacity,
+                this::persist, this::discard);
+        this.lemmatizeStage = new PipelineStage<>("lemmatize", settings.getLemmatizeThreads(), capacity,
+                this::lemmatize, this::discard);
+        this.parseStage = new PipelineStage<>("parse", settings.getParseThreads(), capacity,
+                this::parse, this::discard);
+        this.scheduler = new CrawlScheduler(settings.getMaxConcurrency(), this);
+    }
+
+    public CompletableFuture<Void> start(HostQueue host, String seedUrl) {
+        return scheduler.start(host, seedUrl);
+    }
+
+    public CompletableFuture<Void> resume(HostQueue host) {
+        return scheduler.resume(host);
+    }
+
+    public void shutdownNow() {
+        scheduler.shutdownNow();
+        parseStage.shutdownNow();
+        lemmatizeStage.shutdownNow();
+        persistStage.shutdownNow();
+    }
+
+    /**
+     * Ждет выхода потоков загрузки и всех этапов: пока они работают, этап сохранения
+     * еще может писать страницы, индекс и счетчики.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!scheduler.awaitTermination(timeout, unit)) {
+            return false;
+        }
+        for (PipelineStage<PageWork> stage : List.of(parseStage, lemmatizeStage, persistStage)) {
+            if (!stage.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<StageStatistics> getStatistics() {
+        return List.of(scheduler.getStatistics(), parseStage.getStatistics(),
+                lemmatizeStage.getStatistics(), persistStage.getStatistics());
+    }
+
+    @Override
+    public List<String> seed(HostQueue host) {
+        return processor.seed(host);
+    }
+
+    @Override
+    public PageWork fetch(HostQueue host, String url) throws IOException {
+        PageWork work = new PageWork(host, url);
+        processor.fetch(work);
+        return work.getDocument() != null || work.isNotModified() || work.isGone() ? work : null;
+    }
+
+    @Override
+    public void handOff(PageWork work) throws InterruptedException {
+        (work.isGone() ? persistStage : parseStage).submit(work);
+    }
+
+    private void parse(PageWork work) {
+        List<String> links = processor.parse(work);
+        links.forEach(link -> scheduler.enqueue(work.getHost(), link));
+        work.setDocument(null);
+        forward(work, lemmatizeStage);
+    }
+
+    private void lemmatize(PageWork work) {
+        processor.lemmatize(work);
+        forward(work, persistStage);
+    }
+
+    private void persist(PageWork work) {
+        processor.persist(work);
+        work.getHost().markDone(work.getUrl());
+    }
+
+    private void forward(PageWork work, PipelineStage<PageWork> next) {
+        if (work.getPage() == null) {
+            work.getHost().markDone(work.getUrl());
+            return;
+        }
+        try {
+            next.submit(work);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            discard(work);
+        }
+    }
+
+    private void discard(PageWork work) {
+        work.getHost().markDone(work.getUrl());
+    }
+}
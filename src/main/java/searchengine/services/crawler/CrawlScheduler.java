@@ -0,0 +1,167 @@
+package searchengine.services.crawler;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.dto.indexing.StageStatistics;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Планировщик обхода. Выдает хостам слоты загрузки по времени их следующего
+ * разрешенного запроса, общее число одновременных загрузок ограничено
+ * бюджетом maxConcurrency. Ожидание задержки не занимает рабочие потоки.
+ * Загруженные страницы передаются дальше через {@link CrawlHandler#handOff}.
+ */
+@Slf4j
+public class CrawlScheduler {
+    private final ExecutorService workers;
+    private final ScheduledExecutorService timer;
+    private final CrawlHandler handler;
+    private final int maxConcurrency;
+    private final StageMeter meter = new StageMeter();
+    private final AtomicInteger queued = new AtomicInteger();
+    private volatile boolean running = true;
+
+    public CrawlScheduler(int maxConcurrency, CrawlHandler handler) {
+        this.handler = handler;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.workers = Executors.newFixedThreadPool(this.maxConcurrency, threadFactory("crawl-fetch"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(threadFactory("crawl-timer"));
+    }
+
+    public CompletableFuture<Void> start(HostQueue host, String rootUrl) {
+        submitSeeding(host, rootUrl);
+        return host.completion();
+    }
+
+    /**
+     * Продолжает обход хоста, очередь которого восстановлена из контрольной точки.
+     */
+    public CompletableFuture<Void> resume(HostQueue host) {
+        queued.addAndGet(host.size());
+        submitSeeding(host, null);
+        return host.completion();
+    }
+
+    public void enqueue(HostQueue host, String url) {
+        if (running && host.offer(url)) {
+            queued.incrementAndGet();
+            dispatch(host);
+        }
+    }
+
+    /**
+     * Статистика этапа загрузки: очередь этапа - все ссылки, ожидающие загрузки во всех хостах.
+     */
+    public StageStatistics getStatistics() {
+        StageStatistics statistics = new StageStatistics();
+        statistics.setName("fetch");
+        statistics.setThreads(maxConcurrency);
+        statistics.setBusyThreads(meter.getBusy());
+        statistics.setQueueSize(queued.get());
+        statistics.setProcessed(meter.getProcessed());
+        statistics.setThroughput(meter.getThroughput());
+        return statistics;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void shutdownNow() {
+        running = false;
+        timer.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return workers.awaitTermination(timeout, unit);
+    }
+
+    private void submitSeeding(HostQueue host, String rootUrl) {
+        try {
+            workers.execute(() -> seed(host, rootUrl));
+        } catch (RejectedExecutionException e) {
+            log.debug("Пул остановлен, хост {} не будет обработан", host.getSite().getUrl());
+        }
+    }
+
+    private void seed(HostQueue host, String rootUrl) {
+        List<String> seeds = List.of();
+        try {
+            seeds = handler.seed(host);
+        } catch (Exception e) {
+            log.error("Ошибка при подготовке обхода хоста {}", host.getSite().getUrl(), e);
+        }
+        if (rootUrl != null) {
+            enqueue(host, rootUrl);
+        }
+        seeds.forEach(url -> enqueue(host, url));
+        dispatch(host);
+        host.completeIfIdle();
+    }
+
+    private void dispatch(HostQueue host) {
+        if (!running) {
+            return;
+        }
+        long delay = host.reserveFetchSlot(System.currentTimeMillis());
+        if (delay < 0) {
+            return;
+        }
+        try {
+            timer.schedule(() -> submit(host), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Планировщик остановлен, хост {} не будет обработан", host.getSite().getUrl());
+        }
+    }
+
+    private void submit(HostQueue host) {
+        try {
+            workers.execute(() -> crawl(host));
+        } catch (RejectedExecutionException e) {
+            log.debug("Пул остановлен, хост {} не будет обработан", host.getSite().getUrl());
+        }
+    }
+
+    private void crawl(HostQueue host) {
+        String url = host.startFetch(System.currentTimeMillis());
+        if (url == null) {
+            host.releaseFetchSlot();
+            return;
+        }
+        queued.decrementAndGet();
+        PageWork work = null;
+        meter.begin();
+        try {
+            work = handler.fetch(host, url);
+        } catch (IOException e) {
+            log.error("Ошибка при подключении к странице: {}", url);
+        } finally {
+            meter.end();
+            host.releaseFetchSlot();
+            dispatch(host);
+        }
+        if (work == null || !running) {
+            host.markDone(url);
+            return;
+        }
+        try {
+            handler.handOff(work);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            host.markDone(url);
+        }
+    }
+
+    static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
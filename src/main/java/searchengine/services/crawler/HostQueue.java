@@ -0,0 +1,234 @@
+package searchengine.services.crawler;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import searchengine.model.Site;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Очередь обхода одного хоста: ссылки, ожидающие загрузки, и время,
+ * раньше которого к хосту нельзя обращаться повторно.
+ * Одновременно у хоста может быть не больше одной загрузки.
+ * В памяти держится не больше capacity ссылок, остальные выгружаются во временный файл
+ * и возвращаются в очередь по мере ее освобождения.
+ */
+@Slf4j
+public class HostQueue {
+    @Getter
+    private final Site site;
+    private final int capacity;
+    private final Deque<String> urls = new ArrayDeque<>();
+    private final Set<String> inFlight = new HashSet<>();
+    private final VisitedUrlSet visited;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private long delayMs;
+    private RobotsRules rules = RobotsRules.allowAll();
+    private long nextAllowedAt;
+    private boolean fetchReserved;
+    private UrlSpillFile overflow;
+    private long overflowEpisode;
+    private boolean linksDropped;
+
+    public HostQueue(Site site, long delayMs, int capacity, VisitedUrlSet visited) {
+        this.site = site;
+        this.delayMs = delayMs;
+        this.capacity = capacity;
+        this.visited = visited;
+    }
+
+    /**
+     * Применяет правила robots.txt и задержку между запросами, полученные при подготовке сайта.
+     */
+    public synchronized void configure(RobotsRules rules, long delayMs) {
+        this.rules = rules;
+        this.delayMs = delayMs;
+    }
+
+    /**
+     * @return true, если ссылка новая, разрешена robots.txt и поставлена в очередь
+     */
+    public synchronized boolean offer(String url) {
+        url = UrlFingerprint.normalize(url);
+        if (!rules.isAllowed(url)) {
+            return false;
+        }
+        if (!visited.add(url)) {
+            return false;
+        }
+        if (!append(url)) {
+            return false;
+        }
+        pending.incrementAndGet();
+        return true;
+    }
+
+    private boolean append(String url) {
+        if (overflow == null && urls.size() < capacity) {
+            urls.addLast(url);
+            return true;
+        }
+        try {
+            if (overflow == null) {
+                overflow = new UrlSpillFile();
+                overflowEpisode = 0;
+                log.info("Очередь хоста {} заполнена ({} ссылок), новые ссылки выгружаются на диск",
+                        site.getUrl(), capacity);
+            }
+            overflow.append(url);
+            overflowEpisode++;
+            return true;
+        } catch (IOException e) {
+            log.error("Ошибка при выгрузке очереди хоста {} на диск, ссылка {} пропущена", site.getUrl(), url, e);
+            linksDropped = true;
+            return false;
+        }
+    }
+
+    /**
+     * Возвращает в очередь выгруженные ссылки, пока в ней есть место.
+     */
+    private void refill() {
+        if (overflow == null) {
+            return;
+        }
+        try {
+            while (urls.size() < capacity && overflow.remaining() > 0) {
+                urls.addLast(overflow.poll());
+            }
+        } catch (IOException e) {
+            long lost = overflow.remaining();
+            log.error("Ошибка при чтении очереди хоста {} с диска, потеряно {} ссылок", site.getUrl(), lost, e);
+            pending.addAndGet((int) -lost);
+            linksDropped = true;
+            closeOverflow();
+            return;
+        }
+        if (overflow.remaining() == 0) {
+            log.info("Очередь хоста {} снова помещается в память, через диск прошло {} ссылок",
+                    site.getUrl(), overflowEpisode);
+            closeOverflow();
+        }
+    }
+
+    private void closeOverflow() {
+        try {
+            overflow.close();
+        } catch (IOException e) {
+            log.warn("Не удалось удалить временный файл очереди хоста {}", site.getUrl(), e);
+        }
+        overflow = null;
+    }
+
+    /**
+     * Резервирует слот загрузки.
+     *
+     * @return задержка в миллисекундах до разрешенного времени запроса
+     * или -1, если загрузка уже запланирована или очередь пуста
+     */
+    synchronized long reserveFetchSlot(long now) {
+        if (fetchReserved || urls.isEmpty()) {
+            return -1;
+        }
+        fetchReserved = true;
+        return Math.max(0, nextAllowedAt - now);
+    }
+
+    synchronized String startFetch(long now) {
+        nextAllowedAt = now + delayMs;
+        String url = urls.pollFirst();
+        if (url != null) {
+            inFlight.add(url);
+            refill();
+        }
+        return url;
+    }
+
+    synchronized void releaseFetchSlot() {
+        fetchReserved = false;
+    }
+
+    /**
+     * Отмечает ссылку полностью обработанной. Когда обработаны все ссылки, обход хоста завершен.
+     */
+    void markDone(String url) {
+        synchronized (this) {
+            inFlight.remove(url);
+        }
+        if (pending.decrementAndGet() == 0) {
+            completion.complete(null);
+        }
+    }
+
+    /**
+     * Завершает обход хоста, если в нем не осталось ни одной ссылки.
+     */
+    void completeIfIdle() {
+        if (pending.get() == 0) {
+            completion.complete(null);
+        }
+    }
+
+    public synchronized int size() {
+        return urls.size() + (overflow == null ? 0 : (int) overflow.remaining());
+    }
+
+    /**
+     * @return true, если часть найденных ссылок не попала в обход: переполнено множество
+     * посещенных или не удалось выгрузить очередь на диск
+     */
+    public synchronized boolean hasDroppedLinks() {
+        return linksDropped || visited.isFull();
+    }
+
+    /**
+     * Удаляет временный файл очереди. Вызывается, когда обход хоста завершен или остановлен
+     * и его контрольная точка уже сохранена.
+     */
+    public synchronized void release() {
+        if (overflow != null) {
+            closeOverflow();
+        }
+    }
+
+    /**
+     * Снимок состояния для контрольной точки: ссылки в очереди, включая выгруженные на диск,
+     * вместе со ссылками, которые уже загружаются или обрабатываются, и отпечатки посещенных ссылок.
+     */
+    public synchronized HostSnapshot snapshot() {
+        List<String> frontier = new ArrayList<>(inFlight.size() + size());
+        frontier.addAll(inFlight);
+        frontier.addAll(urls);
+        if (overflow != null) {
+            try {
+                overflow.copyRemaining(frontier);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new HostSnapshot(frontier, visited.fingerprints());
+    }
+
+    /**
+     * Восстанавливает очередь из контрольной точки. Ссылки уже учтены в множестве посещенных.
+     */
+    synchronized void restore(List<String> frontier) {
+        frontier.forEach(url -> {
+            if (append(url)) {
+                pending.incrementAndGet();
+            }
+        });
+        if (pending.get() == 0) {
+            completion.complete(null);
+        }
+    }
+
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+}
@@ -0,0 +1,13 @@
+package searchengine.services.crawler;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+@Getter
+@RequiredArgsConstructor
+public class HostSnapshot {
+    private final List<String> frontier;
+    private final long[] visitedFingerprints;
+}
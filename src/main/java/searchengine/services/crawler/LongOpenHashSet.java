@@ -0,0 +1,89 @@
+package searchengine.services.crawler;
+
+/**
+ * Множество long с открытой адресацией и линейным пробированием.
+ * Растет удвоением до maxSize элементов, после чего новые значения не принимает.
+ * Не потокобезопасно.
+ */
+public class LongOpenHashSet {
+    private static final long EMPTY = 0L;
+    private static final long ZERO_REPLACEMENT = 0x9e3779b97f4a7c15L;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final int maxSize;
+    private long[] table;
+    private int mask;
+    private int size;
+
+    public LongOpenHashSet(int initialSize, int maxSize) {
+        this.maxSize = maxSize;
+        int capacity = tableSizeFor(Math.min(Math.max(initialSize, 16), maxSize));
+        this.table = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public enum AddResult {
+        ADDED, PRESENT, FULL
+    }
+
+    public AddResult add(long value) {
+        long key = value == EMPTY ? ZERO_REPLACEMENT : value;
+        int slot = find(key);
+        if (table[slot] == key) {
+            return AddResult.PRESENT;
+        }
+        if (size >= maxSize) {
+            return AddResult.FULL;
+        }
+        table[slot] = key;
+        size++;
+        if (size * 2 > table.length && table.length < MAX_CAPACITY) {
+            resize(table.length * 2);
+        }
+        return AddResult.ADDED;
+    }
+
+    public boolean contains(long value) {
+        long key = value == EMPTY ? ZERO_REPLACEMENT : value;
+        return table[find(key)] == key;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long[] toArray() {
+        long[] values = new long[size];
+        int i = 0;
+        for (long key : table) {
+            if (key != EMPTY) {
+                values[i++] = key;
+            }
+        }
+        return values;
+    }
+
+    private int find(long key) {
+        int slot = (int) UrlFingerprint.mix(key) & mask;
+        while (table[slot] != EMPTY && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        long[] old = table;
+        table = new long[capacity];
+        mask = capacity - 1;
+        for (long key : old) {
+            if (key != EMPTY) {
+                table[find(key)] = key;
+            }
+        }
+    }
+
+    private static int tableSizeFor(int size) {
+        int capacity = Integer.highestOneBit(Math.max(size * 2 - 1, 1)) << 1;
+        return Math.min(capacity, MAX_CAPACITY);
+    }
+}
@@ -0,0 +1,81 @@
+package searchengine.services.crawler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Последние отпечатки SimHash страниц сайта для поиска почти одинаковых страниц.
+ * Отпечаток делится на maxDistance + 1 полос: у отпечатков, отличающихся не более чем
+ * в maxDistance битах, хотя бы одна полоса совпадает целиком. Хранит не больше
+ * capacity отпечатков, при переполнении вытесняет самые старые.
+ */
+public class NearDuplicateIndex {
+    private final int maxDistance;
+    private final int bands;
+    private final int bandWidth;
+    private final long[] fingerprints;
+    private final int[] pageIds;
+    private final List<Map<Long, List<Integer>>> bandTables = new ArrayList<>();
+    private int next;
+    private int size;
+
+    public NearDuplicateIndex(int maxDistance, int capacity) {
+        this.maxDistance = maxDistance;
+        this.bands = Math.min(Math.max(maxDistance + 1, 1), 16);
+        this.bandWidth = (Long.SIZE + bands - 1) / bands;
+        this.fingerprints = new long[Math.max(1, capacity)];
+        this.pageIds = new int[Math.max(1, capacity)];
+        for (int i = 0; i < bands; i++) {
+            bandTables.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * @return id страницы, почти совпадающей с отпечатком, или null
+     */
+    public synchronized Integer find(long fingerprint, int excludePageId) {
+        for (int band = 0; band < bands; band++) {
+            List<Integer> slots = bandTables.get(band).get(bandValue(fingerprint, band));
+            if (slots == null) {
+                continue;
+            }
+            for (int slot : slots) {
+                if (pageIds[slot] != excludePageId && SimHash.distance(fingerprints[slot], fingerprint) <= maxDistance) {
+                    return pageIds[slot];
+                }
+            }
+        }
+        return null;
+    }
+
+    public synchronized void add(long fingerprint, int pageId) {
+        int slot = next;
+        if (size == fingerprints.length) {
+            for (int band = 0; band < bands; band++) {
+                long key = bandValue(fingerprints[slot], band);
+                List<Integer> slots = bandTables.get(band).get(key);
+                slots.remove(Integer.valueOf(slot));
+                if (slots.isEmpty()) {
+                    bandTables.get(band).remove(key);
+                }
+            }
+        } else {
+            size++;
+        }
+        fingerprints[slot] = fingerprint;
+        pageIds[slot] = pageId;
+        for (int band = 0; band < bands; band++) {
+            bandTables.get(band).computeIfAbsent(bandValue(fingerprint, band), key -> new ArrayList<>(1)).add(slot);
+        }
+        next = (next + 1) % fingerprints.length;
+    }
+
+    private long bandValue(long fingerprint, int band) {
+        int shift = band * bandWidth;
+        int width = Math.min(bandWidth, Long.SIZE - shift);
+        long mask = width == Long.SIZE ? -1L : (1L << width) - 1;
+        return ((long) band << 56) ^ ((fingerprint >>> shift) & mask);
+    }
+}
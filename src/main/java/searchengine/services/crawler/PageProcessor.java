@@ -0,0 +1,38 @@
+package searchengine.services.crawler;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Работа, выполняемая на этапах конвейера: загрузка, разбор, лемматизация и сохранение.
+ */
+public interface PageProcessor {
+
+    /**
+     * Настраивает хост по robots.txt.
+     *
+     * @return начальные ссылки из карты сайта
+     */
+    List<String> seed(HostQueue host);
+
+    /**
+     * Загружает страницу: заполняет документ или отмечает, что страница не изменилась
+     * или удалена. Если ничего из этого не заполнено, страница дальше не обрабатывается.
+     * Удаленная страница передается сразу на этап сохранения.
+     */
+    void fetch(PageWork work) throws IOException;
+
+    /**
+     * Создает страницу из документа. Если страница не изменилась, page остается пустым.
+     *
+     * @return абсолютные ссылки, найденные на странице
+     */
+    List<String> parse(PageWork work);
+
+    void lemmatize(PageWork work);
+
+    /**
+     * Сохраняет страницу или, если она удалена, убирает ее из базы и индекса.
+     */
+    void persist(PageWork work);
+}
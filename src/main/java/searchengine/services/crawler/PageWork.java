@@ -0,0 +1,33 @@
+package searchengine.services.crawler;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.jsoup.nodes.Document;
+import searchengine.model.Page;
+
+import java.util.Map;
+
+/**
+ * Страница, передаваемая между этапами конвейера индексации.
+ * При повторной индексации existingPage - сохраненная ранее версия страницы,
+ * gone - сервер ответил, что ее больше нет (404 или 410).
+ */
+@Getter
+@Setter
+public class PageWork {
+    private final HostQueue host;
+    private final String url;
+    private Document document;
+    private Page existingPage;
+    private boolean notModified;
+    private boolean gone;
+    private String etag;
+    private String lastModified;
+    private Page page;
+    private Map<String, Integer> lemmas;
+
+    public PageWork(HostQueue host, String url) {
+        this.host = host;
+        this.url = url;
+    }
+}
@@ -0,0 +1,82 @@
+package searchengine.services.crawler;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import searchengine.dto.indexing.StageStatistics;
+
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Этап конвейера индексации: ограниченная очередь и собственный пул потоков.
+ * Если очередь заполнена, {@link #submit} блокирует предыдущий этап.
+ */
+@Slf4j
+public class PipelineStage<T> {
+    @Getter
+    private final String name;
+    private final int threads;
+    private final BlockingQueue<T> queue;
+    private final ExecutorService executor;
+    private final Consumer<T> handler;
+    private final Consumer<T> onDiscard;
+    private final StageMeter meter = new StageMeter();
+
+    public PipelineStage(String name, int threads, int capacity, Consumer<T> handler, Consumer<T> onDiscard) {
+        this.name = name;
+        this.threads = Math.max(1, threads);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.handler = handler;
+        this.onDiscard = onDiscard;
+        this.executor = Executors.newFixedThreadPool(this.threads, CrawlScheduler.threadFactory("crawl-" + name));
+        for (int i = 0; i < this.threads; i++) {
+            executor.execute(this::run);
+        }
+    }
+
+    public void submit(T item) throws InterruptedException {
+        queue.put(item);
+    }
+
+    public void shutdownNow() {
+        executor.shutdownNow();
+        queue.clear();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    public StageStatistics getStatistics() {
+        StageStatistics statistics = new StageStatistics();
+        statistics.setName(name);
+        statistics.setThreads(threads);
+        statistics.setBusyThreads(meter.getBusy());
+        statistics.setQueueSize(queue.size());
+        statistics.setQueueCapacity(queue.size() + queue.remainingCapacity());
+        statistics.setProcessed(meter.getProcessed());
+        statistics.setThroughput(meter.getThroughput());
+        return statistics;
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            T item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            meter.begin();
+            try {
+                handler.accept(item);
+            } catch (Exception e) {
+                log.error("Ошибка на этапе {}", name, e);
+                onDiscard.accept(item);
+            } finally {
+                meter.end();
+            }
+        }
+    }
+}
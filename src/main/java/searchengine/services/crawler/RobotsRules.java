@@ -0,0 +1,176 @@
+package searchengine.services.crawler;
+
+import lombok.Getter;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Правила robots.txt для нашего агента: Allow/Disallow с поддержкой * и $,
+ * Crawl-delay и ссылки на карты сайта. Применяется правило с самым длинным
+ * совпавшим шаблоном, при равной длине побеждает Allow.
+ */
+public class RobotsRules {
+    private static final RobotsRules ALLOW_ALL = new RobotsRules(List.of(), null, List.of());
+
+    private final List<Rule> rules;
+    private final Double crawlDelaySeconds;
+    @Getter
+    private final List<String> sitemaps;
+
+    private RobotsRules(List<Rule> rules, Double crawlDelaySeconds, List<String> sitemaps) {
+        this.rules = rules;
+        this.crawlDelaySeconds = crawlDelaySeconds;
+        this.sitemaps = sitemaps;
+    }
+
+    public static RobotsRules allowAll() {
+        return ALLOW_ALL;
+    }
+
+    /**
+     * Разбирает robots.txt. Берется группа, имя агента которой входит в userAgent,
+     * а если такой нет - группа "*".
+     */
+    public static RobotsRules parse(String content, String userAgent) {
+        String agent = userAgent.toLowerCase(Locale.ROOT);
+        List<Rule> specificRules = new ArrayList<>();
+        List<Rule> wildcardRules = new ArrayList<>();
+        List<String> sitemaps = new ArrayList<>();
+        Double specificDelay = null;
+        Double wildcardDelay = null;
+        boolean specificFound = false;
+        boolean groupMatchesSpecific = false;
+        boolean groupMatchesWildcard = false;
+        boolean groupHasRules = false;
+
+        for (String rawLine : content.split("\\r?\\n")) {
+            int comment = rawLine.indexOf('#');
+            String line = (comment >= 0 ? rawLine.substring(0, comment) : rawLine).trim();
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            switch (key) {
+                case "user-agent" -> {
+                    if (groupHasRules) {
+                        groupMatchesSpecific = false;
+                        groupMatchesWildcard = false;
+                        groupHasRules = false;
+                    }
+                    String name = value.toLowerCase(Locale.ROOT);
+                    if (name.equals("*")) {
+                        groupMatchesWildcard = true;
+                    } else if (!name.isEmpty() && agent.contains(name)) {
+                        groupMatchesSpecific = true;
+                        specificFound = true;
+                    }
+                }
+                case "allow", "disallow" -> {
+                    groupHasRules = true;
+                    if (value.isEmpty()) {
+                        continue;
+                    }
+                    Rule rule = new Rule(value, key.equals("allow"));
+                    if (groupMatchesSpecific) {
+                        specificRules.add(rule);
+                    }
+                    if (groupMatchesWildcard) {
+                        wildcardRules.add(rule);
+                    }
+                }
+                case "crawl-delay" -> {
+                    groupHasRules = true;
+                    Double delay = parseDelay(value);
+                    if (groupMatchesSpecific) {
+                        specificDelay = delay;
+                    }
+                    if (groupMatchesWildcard) {
+                        wildcardDelay = delay;
+                    }
+                }
+                case "sitemap" -> sitemaps.add(value);
+                default -> {
+                }
+            }
+        }
+        return specificFound
+                ? new RobotsRules(specificRules, specificDelay, sitemaps)
+                : new RobotsRules(wildcardRules, wildcardDelay, sitemaps);
+    }
+
+    public boolean isAllowed(String url) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+        String path = pathOf(url);
+        Rule best = null;
+        for (Rule rule : rules) {
+            if (rule.matches(path) && (best == null || rule.length > best.length
+                    || (rule.length == best.length && rule.allow))) {
+                best = rule;
+            }
+        }
+        return best == null || best.allow;
+    }
+
+    /**
+     * @return Crawl-delay в миллисекундах или -1, если он не задан
+     */
+    public long getCrawlDelayMs() {
+        return crawlDelaySeconds == null ? -1 : Math.round(crawlDelaySeconds * 1000);
+    }
+
+    private static Double parseDelay(String value) {
+        try {
+            double delay = Double.parseDouble(value);
+            return delay >= 0 ? delay : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String pathOf(String url) {
+        try {
+            URI uri = new URI(url);
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            return uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery();
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    private static class Rule {
+        private final Pattern pattern;
+        private final int length;
+        private final boolean allow;
+
+        private Rule(String value, boolean allow) {
+            this.length = value.length();
+            this.allow = allow;
+            boolean anchored = value.endsWith("$");
+            String body = anchored ? value.substring(0, value.length() - 1) : value;
+            StringBuilder regex = new StringBuilder();
+            for (String part : body.split("\\*", -1)) {
+                if (!regex.isEmpty()) {
+                    regex.append(".*");
+                }
+                regex.append(Pattern.quote(part));
+            }
+            if (!anchored) {
+                regex.append(".*");
+            }
+            this.pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+
+        private boolean matches(String path) {
+            return pattern.matcher(path).matches();
+        }
+    }
+}
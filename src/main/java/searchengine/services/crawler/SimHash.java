@@ -0,0 +1,63 @@
+package searchengine.services.crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 64-битный SimHash текста по шинглам из трех слов. У почти одинаковых текстов
+ * отпечатки отличаются в небольшом числе бит.
+ */
+public final class SimHash {
+    public static final long NONE = 0L;
+    private static final int SHINGLE_SIZE = 3;
+
+    private SimHash() {
+    }
+
+    /**
+     * @return отпечаток или {@link #NONE}, если в тексте меньше minWords слов
+     */
+    public static long of(String text, int minWords) {
+        List<String> words = words(text);
+        if (words.size() < Math.max(minWords, SHINGLE_SIZE)) {
+            return NONE;
+        }
+        int[] weights = new int[Long.SIZE];
+        StringBuilder shingle = new StringBuilder();
+        for (int i = 0; i + SHINGLE_SIZE <= words.size(); i++) {
+            shingle.setLength(0);
+            for (int j = i; j < i + SHINGLE_SIZE; j++) {
+                shingle.append(words.get(j)).append(' ');
+            }
+            long hash = UrlFingerprint.of(shingle.toString());
+            for (int bit = 0; bit < Long.SIZE; bit++) {
+                weights[bit] += ((hash >>> bit) & 1L) != 0 ? 1 : -1;
+            }
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint == NONE ? 1L : fingerprint;
+    }
+
+    public static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,18 @@
+package searchengine.services.crawler;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Результат подготовки сайта к обходу: правила robots.txt, задержка между запросами
+ * и ссылки из карты сайта, упорядоченные от недавно измененных к старым.
+ */
+@Getter
+@RequiredArgsConstructor
+public class SiteSeed {
+    private final RobotsRules rules;
+    private final long delayMs;
+    private final List<String> urls;
+}
@@ -0,0 +1,132 @@
+package searchengine.services.crawler;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Читает robots.txt и карты сайта (включая индексы карт и сжатые gzip)
+ * и формирует начальный набор ссылок для обхода.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SiteSeeder {
+    private final CrawlerSettings settings;
+
+    public SiteSeed seed(String siteUrl) {
+        RobotsRules rules = settings.isRespectRobots() ? loadRobots(siteUrl) : RobotsRules.allowAll();
+        long crawlDelay = rules.getCrawlDelayMs();
+        long delayMs = crawlDelay >= 0 ? Math.min(crawlDelay, settings.getMaxCrawlDelayMs()) : settings.getRequestDelayMs();
+        List<String> urls = settings.isSitemapSeeding() ? loadSitemapUrls(siteUrl, rules) : List.of();
+        log.info("Сайт {}: задержка {} мс, из карты сайта получено {} ссылок", siteUrl, delayMs, urls.size());
+        return new SiteSeed(rules, delayMs, urls);
+    }
+
+    private RobotsRules loadRobots(String siteUrl) {
+        try {
+            Connection.Response response = request(siteUrl + "/robots.txt");
+            if (response.statusCode() >= 400) {
+                log.debug("robots.txt для {} не найден ({})", siteUrl, response.statusCode());
+                return RobotsRules.allowAll();
+            }
+            return RobotsRules.parse(response.body(), settings.getUserAgent());
+        } catch (IOException e) {
+            log.warn("Не удалось загрузить robots.txt для {}: {}", siteUrl, e.getMessage());
+            return RobotsRules.allowAll();
+        }
+    }
+
+    private List<String> loadSitemapUrls(String siteUrl, RobotsRules rules) {
+        Deque<String> sitemaps = new ArrayDeque<>(rules.getSitemaps());
+        if (sitemaps.isEmpty()) {
+            sitemaps.add(siteUrl + "/sitemap.xml");
+        }
+        Set<String> seenSitemaps = new HashSet<>();
+        Map<String, Instant> entries = new HashMap<>();
+        int limit = settings.getMaxQueuedUrlsPerHost();
+
+        while (!sitemaps.isEmpty() && seenSitemaps.size() < settings.getMaxSitemaps() && entries.size() < limit) {
+            String sitemapUrl = sitemaps.pollFirst();
+            if (!seenSitemaps.add(sitemapUrl)) {
+                continue;
+            }
+            Document sitemap = loadSitemap(sitemapUrl);
+            if (sitemap == null) {
+                continue;
+            }
+            sitemap.select("sitemapindex > sitemap > loc").forEach(loc -> sitemaps.addLast(loc.text().trim()));
+            for (Element url : sitemap.select("urlset > url")) {
+                String loc = url.selectFirst("loc") != null ? url.selectFirst("loc").text().trim() : "";
+                if (!loc.startsWith(siteUrl) || !rules.isAllowed(loc) || entries.size() >= limit) {
+                    continue;
+                }
+                Element lastmod = url.selectFirst("lastmod");
+                entries.put(loc, lastmod != null ? parseLastmod(lastmod.text().trim()) : null);
+            }
+        }
+        return entries.entrySet().stream()
+                .sorted(Map.Entry.<String, Instant>comparingByValue(Comparator.nullsLast(Comparator.reverseOrder())))
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    private Document loadSitemap(String sitemapUrl) {
+        try {
+            Connection.Response response = request(sitemapUrl);
+            if (response.statusCode() >= 400) {
+                log.debug("Карта сайта {} недоступна ({})", sitemapUrl, response.statusCode());
+                return null;
+            }
+            byte[] body = response.bodyAsBytes();
+            if (body.length > 2 && (body[0] & 0xff) == 0x1f && (body[1] & 0xff) == 0x8b) {
+                try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                    body = gzip.readAllBytes();
+                }
+            }
+            return Jsoup.parse(new String(body, StandardCharsets.UTF_8), sitemapUrl, Parser.xmlParser());
+        } catch (IOException e) {
+            log.warn("Не удалось загрузить карту сайта {}: {}", sitemapUrl, e.getMessage());
+            return null;
+        }
+    }
+
+    private Connection.Response request(String url) throws IOException {
+        return Jsoup.connect(url).timeout(settings.getConnectionTimeoutMs())
+                .userAgent(settings.getUserAgent())
+                .ignoreContentType(true)
+                .ignoreHttpErrors(true)
+                .maxBodySize(0)
+                .execute();
+    }
+
+    private static Instant parseLastmod(String value) {
+        try {
+            return OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDate.parse(value.length() > 10 ? value.substring(0, 10) : value)
+                        .atStartOfDay().toInstant(ZoneOffset.UTC);
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+}
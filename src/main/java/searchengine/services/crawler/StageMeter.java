@@ -0,0 +1,38 @@
+package searchengine.services.crawler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики этапа обхода: число обработанных элементов и занятых потоков.
+ */
+public class StageMeter {
+    private final long startedAt = System.nanoTime();
+    private final LongAdder processed = new LongAdder();
+    private final AtomicInteger busy = new AtomicInteger();
+
+    void begin() {
+        busy.incrementAndGet();
+    }
+
+    void end() {
+        busy.decrementAndGet();
+        processed.increment();
+    }
+
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    public int getBusy() {
+        return busy.get();
+    }
+
+    /**
+     * @return среднее число обработанных элементов в секунду с момента запуска этапа
+     */
+    public double getThroughput() {
+        double seconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+        return seconds > 0 ? processed.sum() / seconds : 0;
+    }
+}
@@ -0,0 +1,68 @@
+package searchengine.services.crawler;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+
+/**
+ * Нормализация ссылок и их 64-битные отпечатки для множества посещенных страниц.
+ */
+public final class UrlFingerprint {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private UrlFingerprint() {
+    }
+
+    /**
+     * Приводит схему и хост к нижнему регистру, убирает порт по умолчанию и якорь,
+     * пустой путь заменяет на "/".
+     */
+    public static String normalize(String url) {
+        try {
+            URI uri = new URI(url.trim());
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return url;
+            }
+            String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+            int port = uri.getPort();
+            if ((port == 80 && scheme.equals("http")) || (port == 443 && scheme.equals("https"))) {
+                port = -1;
+            }
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            StringBuilder normalized = new StringBuilder(url.length())
+                    .append(scheme).append("://").append(uri.getHost().toLowerCase(Locale.ROOT));
+            if (port != -1) {
+                normalized.append(':').append(port);
+            }
+            normalized.append(path);
+            if (uri.getRawQuery() != null) {
+                normalized.append('?').append(uri.getRawQuery());
+            }
+            return normalized.toString();
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    /**
+     * FNV-1a по символам строки с финальным перемешиванием битов из MurmurHash3.
+     */
+    public static long of(String normalizedUrl) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < normalizedUrl.length(); i++) {
+            hash ^= normalizedUrl.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,85 @@
+package searchengine.services.crawler;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Очередь ссылок во временном файле для ссылок, не поместившихся в очередь хоста.
+ * Ссылки дописываются в конец файла и читаются в том же порядке.
+ * Не потокобезопасно: вызывающий код синхронизирует доступ.
+ */
+class UrlSpillFile implements Closeable {
+    private final Path path;
+    private final Writer writer;
+    private BufferedReader reader;
+    private long written;
+    private long flushed;
+    private long read;
+
+    UrlSpillFile() throws IOException {
+        path = Files.createTempFile("crawl-overflow-", ".txt");
+        path.toFile().deleteOnExit();
+        writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8));
+    }
+
+    void append(String url) throws IOException {
+        writer.write(url);
+        writer.write('\n');
+        written++;
+    }
+
+    /**
+     * @return следующая ссылка или null, если непрочитанных ссылок нет
+     */
+    String poll() throws IOException {
+        if (read == written) {
+            return null;
+        }
+        if (read == flushed) {
+            writer.flush();
+            flushed = written;
+        }
+        if (reader == null) {
+            reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        }
+        read++;
+        return reader.readLine();
+    }
+
+    long remaining() {
+        return written - read;
+    }
+
+    /**
+     * Добавляет в список непрочитанные ссылки, не меняя позицию чтения.
+     */
+    void copyRemaining(List<String> target) throws IOException {
+        if (read == written) {
+            return;
+        }
+        writer.flush();
+        flushed = written;
+        try (BufferedReader copy = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            for (long i = 0; i < written; i++) {
+                String url = copy.readLine();
+                if (i >= read) {
+                    target.add(url);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (writer) {
+            if (reader != null) {
+                reader.close();
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
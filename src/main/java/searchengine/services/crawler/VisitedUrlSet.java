@@ -0,0 +1,77 @@
+package searchengine.services.crawler;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Посещенные ссылки одного сайта в рамках одного обхода. Хранит 64-битные отпечатки
+ * нормализованных ссылок, объем памяти ограничен maxUrls. Фильтр Блума, если включен,
+ * отвечает на вопрос о новых ссылках без обращения к основной таблице.
+ * Не потокобезопасно: вызывающий код синхронизирует доступ.
+ */
+@Slf4j
+public class VisitedUrlSet {
+    private static final int INITIAL_SIZE = 1024;
+
+    private final LongOpenHashSet fingerprints;
+    private final BloomFilter bloomFilter;
+    private boolean overflowReported;
+
+    public VisitedUrlSet(int maxUrls, boolean useBloomFilter, double falsePositiveRate) {
+        this.fingerprints = new LongOpenHashSet(INITIAL_SIZE, maxUrls);
+        this.bloomFilter = useBloomFilter ? new BloomFilter(maxUrls, falsePositiveRate) : null;
+    }
+
+    /**
+     * @param normalizedUrl ссылка после {@link UrlFingerprint#normalize}
+     * @return true, если ссылка встретилась впервые и запомнена
+     */
+    public boolean add(String normalizedUrl) {
+        long fingerprint = UrlFingerprint.of(normalizedUrl);
+        if (bloomFilter != null && !bloomFilter.mightContain(fingerprint)) {
+            return insert(fingerprint, normalizedUrl);
+        }
+        if (fingerprints.contains(fingerprint)) {
+            return false;
+        }
+        return insert(fingerprint, normalizedUrl);
+    }
+
+    public int size() {
+        return fingerprints.size();
+    }
+
+    /**
+     * @return true, если предел достигнут и часть новых ссылок была отклонена
+     */
+    public boolean isFull() {
+        return overflowReported;
+    }
+
+    public long[] fingerprints() {
+        return fingerprints.toArray();
+    }
+
+    /**
+     * Восстанавливает отпечатки из контрольной точки.
+     */
+    public void restore(long[] saved) {
+        for (long fingerprint : saved) {
+            insert(fingerprint, "");
+        }
+    }
+
+    private boolean insert(long fingerprint, String normalizedUrl) {
+        if (fingerprints.add(fingerprint) == LongOpenHashSet.AddResult.FULL) {
+            if (!overflowReported) {
+                log.warn("Достигнут предел посещенных ссылок ({}), новые ссылки не принимаются: {}",
+                        fingerprints.size(), normalizedUrl);
+                overflowReported = true;
+            }
+            return false;
+        }
+        if (bloomFilter != null) {
+            bloomFilter.put(fingerprint);
+        }
+        return true;
+    }
+}
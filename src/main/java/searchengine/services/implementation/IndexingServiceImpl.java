@@ -2,31 +2,51 @@ package searchengine.services.implementation;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import searchengine.config.CrawlerSettings;
 import searchengine.config.SiteFromConfig;
 import searchengine.config.SitesList;
 import searchengine.dto.indexing.IndexingResponse;
+import searchengine.dto.indexing.PipelineStatisticsResponse;
 import searchengine.exceptions.IndexingException;
 import searchengine.model.*;
-import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
-import searchengine.repositories.PageRepository;
-import searchengine.repositories.SiteRepository;
+import searchengine.repositories.*;
 import searchengine.services.WordService;
+import searchengine.services.crawler.CrawlCheckpointService;
+import searchengine.services.crawler.CrawlPipeline;
+import searchengine.services.crawler.HostQueue;
+import searchengine.services.crawler.NearDuplicateIndex;
+import searchengine.services.crawler.PageProcessor;
+import searchengine.services.crawler.PageWork;
+import searchengine.services.crawler.SimHash;
+import searchengine.services.crawler.SiteSeed;
+import searchengine.services.crawler.SiteSeeder;
+import searchengine.services.crawler.VisitedUrlSet;
 import searchengine.services.interfaces.IndexingService;
+import searchengine.services.search.LemmaOffsets;
+import searchengine.services.search.SearchResultCache;
+import searchengine.services.search.SearchSnapshotManager;
+import searchengine.services.storage.IndexStore;
+import searchengine.services.storage.SiteCounters;
+import searchengine.services.storage.SitePartitionManager;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.*;
 
 @Service
@@ -35,39 +55,71 @@ import java.util.concurrent.*;
 public class IndexingServiceImpl implements IndexingService {
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
+    private final PageContentRepository pageContentRepository;
     private final WordService wordService;
     private final SitesList sitesList;
+    private final CrawlerSettings crawlerSettings;
+    private final CrawlCheckpointService checkpointService;
+    private final SiteSeeder siteSeeder;
+    private final IndexStore indexStore;
+    private final SitePartitionManager partitionManager;
+    private final SiteCounters siteCounters;
+    private final SearchSnapshotManager snapshotManager;
+    private final SearchResultCache resultCache;
 
     private volatile boolean indexingInProgress = false;
-    private final Map<Site, ForkJoinPool> activePools = new ConcurrentHashMap<>();
+    private volatile boolean incrementalMode = false;
+    private volatile CrawlPipeline pipeline;
+    private volatile ScheduledExecutorService checkpointTimer;
+    private final ExecutorService maintenanceExecutor = Executors.newSingleThreadExecutor();
+    private final Map<Site, HostQueue> activeHosts = new ConcurrentHashMap<>();
+    private final Map<Site, NearDuplicateIndex> duplicateIndexes = new ConcurrentHashMap<>();
     private static final List<String> IGNORED_EXTENSIONS = Arrays.asList(".zip", ".pdf", ".jpg", ".png", ".docx", ".xlsx");
-    private final Map<String, Lemma> lemmaCache = new ConcurrentHashMap<>();
-
-    private static final int MAX_POOL_SIZE = Runtime.getRuntime().availableProcessors() / 2;
-    private static final int REQUEST_DELAY_MS = 100;
-    private static final int CONNECTION_TIMEOUT_MS = 5000;
 
     @Override
-    @Transactional
-    public IndexingResponse startIndexing() {
-        log.info("Запрос на запуск индексации");
+    public IndexingResponse startIndexing(boolean incremental) {
+        log.info("Запрос на запуск {} индексации", incremental ? "повторной" : "полной");
         IndexingResponse response = new IndexingResponse();
         if (indexingInProgress) {
             log.warn("Попытка запуска индексации, когда она уже выполняется");
             throw new IndexingException("Индексация уже запущена");
         }
         indexingInProgress = true;
-        log.info("Очистка базы данных перед началом индексации");
-        clearDatabase();
-        log.info("Начало индексации сайтов: {}", sitesList.getSites().stream().map(SiteFromConfig::getUrl).toList());
-        sitesList.getSites().forEach(this::indexSite);
+        incrementalMode = incremental;
+        maintenanceExecutor.execute(() -> prepareAndStart(incremental));
         response.setResult(true);
-        log.info("Индексация успешно запущена");
+        log.info("Индексация запущена, подготовка базы данных выполняется в фоне");
         return response;
     }
 
+    /**
+     * Очищает данные прошлой индексации и запускает обход сайтов.
+     * Выполняется вне потока запроса: очистка большой базы может занимать заметное время.
+     */
+    private void prepareAndStart(boolean incremental) {
+        try {
+            checkpointService.deleteAll();
+            if (!incremental) {
+                log.info("Очистка базы данных перед началом индексации");
+                clearDatabase();
+            }
+            if (!indexingInProgress) {
+                log.info("Индексация остановлена до начала обхода сайтов");
+                return;
+            }
+            launchPipeline();
+            log.info("Начало индексации сайтов: {}", sitesList.getSites().stream().map(SiteFromConfig::getUrl).toList());
+            sitesList.getSites().forEach(this::indexSite);
+            activeHosts.forEach((site, host) ->
+                    pipeline.start(host, site.getUrl()).whenComplete((result, e) -> finishSite(site, e)));
+            log.info("Индексация успешно запущена");
+        } catch (Exception e) {
+            log.error("Ошибка при подготовке индексации", e);
+            indexingInProgress = false;
+            stopCheckpointTimer();
+        }
+    }
+
     @Override
     @Transactional
     public IndexingResponse stopIndexing() {
@@ -78,30 +130,66 @@ public class IndexingServiceImpl implements IndexingService {
             throw new IndexingException("Индексация не запущена");
         }
         indexingInProgress = false;
-        log.info("Остановка {} активных пулов индексации", activePools.size());
-        activePools.forEach((site, pool) -> {
-            log.debug("Остановка пула для сайта: {}", site.getUrl());
-            pool.shutdown();
-            try {
-                if (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
-                    log.warn("Пул не завершил работу в течение 1 секунды");
-                    pool.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                log.error("Ошибка при ожидании завершения пула для сайта {}", site.getUrl(), e);
-                Thread.currentThread().interrupt();
-            }
+        log.info("Остановка обхода {} активных сайтов", activeHosts.size());
+        stopCheckpointTimer();
+        Map<Site, HostQueue> stoppedHosts = new HashMap<>(activeHosts);
+        stoppedHosts.keySet().forEach(site -> {
             if (siteRepository.findByUrl(site.getUrl()).getStatus() != Status.INDEXED) {
                 log.info("Обновление статуса сайта {} на FAILED (индексация остановлена)", site.getUrl());
                 updateSiteStatus(site, Status.FAILED, "Индексация остановлена пользователем");
             }
         });
-        activePools.clear();
+        activeHosts.clear();
+        duplicateIndexes.clear();
+        CrawlPipeline currentPipeline = pipeline;
+        if (currentPipeline == null) {
+            completeStoppedHosts(stoppedHosts);
+        } else {
+            currentPipeline.shutdownNow();
+            if (awaitPipeline(currentPipeline)) {
+                completeStoppedHosts(stoppedHosts);
+            } else {
+                log.warn("Конвейер индексации не завершил работу за {} с, данные будут дописаны после его остановки",
+                        crawlerSettings.getShutdownTimeoutSeconds());
+                afterPipelineTermination(currentPipeline, () -> completeStoppedHosts(stoppedHosts));
+            }
+        }
         response.setResult(true);
         log.info("Индексация успешно остановлена");
         return response;
     }
 
+    @Override
+    public IndexingResponse resumeIndexing() {
+        log.info("Запрос на продолжение индексации");
+        IndexingResponse response = new IndexingResponse();
+        if (indexingInProgress) {
+            log.warn("Попытка продолжения индексации, когда она уже выполняется");
+            throw new IndexingException("Индексация уже запущена");
+        }
+        List<CrawlCheckpoint> checkpoints = checkpointService.findAll();
+        if (checkpoints.isEmpty()) {
+            log.warn("Нет контрольных точек для продолжения индексации");
+            throw new IndexingException("Нет сохраненного состояния индексации");
+        }
+        indexingInProgress = true;
+        incrementalMode = checkpoints.stream().anyMatch(CrawlCheckpoint::isIncremental);
+        for (CrawlCheckpoint checkpoint : checkpoints) {
+            HostQueue host = checkpointService.restore(checkpoint, createVisitedUrlSet(),
+                    crawlerSettings.getRequestDelayMs(), crawlerSettings.getMaxQueuedUrlsPerHost());
+            log.info("Продолжение обхода сайта {} с контрольной точки от {}: {} ссылок в очереди",
+                    checkpoint.getSite().getUrl(), checkpoint.getSavedAt(), host.size());
+            updateSiteStatus(checkpoint.getSite(), Status.INDEXING, null);
+            activeHosts.put(checkpoint.getSite(), host);
+            duplicateIndexes.put(checkpoint.getSite(), createDuplicateIndex(checkpoint.getSite()));
+        }
+        launchPipeline();
+        activeHosts.forEach((site, host) ->
+                pipeline.resume(host).whenComplete((result, e) -> finishSite(site, e)));
+        response.setResult(true);
+        return response;
+    }
+
     @Override
     @Transactional
     public IndexingResponse indexSinglePage(String url) {
@@ -120,107 +208,286 @@ public class IndexingServiceImpl implements IndexingService {
                 log.info("Создание новой записи сайта для {}", domain);
                 siteEntity = createNewSite(domain, sitesList.getSites().stream().filter(site -> site.getUrl().equals(domain)).findFirst().get().getName());
             }
-            Page page = createPage(siteEntity, connectToPage(url));
+            Connection.Response pageResponse = connectToPage(url, null);
+            Page page = createPage(siteEntity, pageResponse != null ? pageResponse.parse() : null);
             if (page != null) {
+                applyValidators(page, pageResponse.header("ETag"), pageResponse.header("Last-Modified"));
+                fingerprint(page);
+                Map<String, Integer> lemmas = collectLemmas(page);
+                page.setWordCount(wordCount(lemmas));
                 log.debug("Очистка предыдущих данных для страницы {}", page.getPath());
                 cleanLemmaAndIndex(page);
-                pageRepository.save(page);
+                savePage(page);
+                siteCounters.addPages(siteEntity, 1);
+                siteCounters.addWords(siteEntity, page.getWordCount());
                 log.debug("Индексация контента страницы {}", page.getPath());
-                indexPageContent(page);
+                indexPageContent(page, lemmas);
+                indexStore.flush();
+                siteCounters.flush();
+                publishIndexChanges();
                 log.info("Страница {} успешно проиндексирована", url);
             }
             response.setResult(true);
         } catch (MalformedURLException e) {
             log.error("Не корректный Url {}", url);
             throw new IndexingException("Не корректный Url " + url);
-        } catch (IOException | InterruptedException e) {
+        } catch (IOException e) {
             log.error("Ошибка при индексации страницы: {}", url, e);
             throw new IndexingException("Ошибка при индексации страницы: " + url);
         }
         return response;
     }
 
-    private void clearDatabase() {
-        indexRepository.deleteAll();
-        lemmaRepository.deleteAll();
-        pageRepository.deleteAll();
-        siteRepository.deleteAll();
-        activePools.clear();
+    @Override
+    public PipelineStatisticsResponse getPipelineStatistics() {
+        PipelineStatisticsResponse response = new PipelineStatisticsResponse();
+        CrawlPipeline currentPipeline = pipeline;
+        response.setIndexing(indexingInProgress);
+        response.setStages(currentPipeline != null ? currentPipeline.getStatistics() : Collections.emptyList());
+        response.setResult(true);
+        return response;
+    }
+
+    @Override
+    public boolean isIndexing() {
+        return indexingInProgress;
     }
 
-    private synchronized void saveOrUpdateLemmasInBatch(Map<String, Integer> lemmas, Site siteEntity) {
-        List<Lemma> lemmasToSave = new ArrayList<>();
-        List<Lemma> lemmasToUpdate = new ArrayList<>();
+    private void launchPipeline() {
+        pipeline = new CrawlPipeline(crawlerSettings, new PageCrawlProcessor());
+        long interval = crawlerSettings.getCheckpointIntervalSeconds();
+        checkpointTimer = Executors.newSingleThreadScheduledExecutor();
+        checkpointTimer.scheduleWithFixedDelay(() -> {
+            indexStore.flush();
+            snapshotManager.invalidateLiveResults();
+            activeHosts.values().forEach(this::saveCheckpoint);
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Дописывает буферы индекса и счетчиков остановленных сайтов и сохраняет их контрольные точки.
+     * Вызывается только после выхода потоков конвейера, иначе контрольная точка не совпала бы
+     * с сохраненными данными, а поздние записи остались бы в буферах, которые никто не сбросит.
+     */
+    private void completeStoppedHosts(Map<Site, HostQueue> stoppedHosts) {
+        stoppedHosts.keySet().forEach(indexStore::complete);
+        siteCounters.flush();
+        stoppedHosts.values().forEach(host -> {
+            saveCheckpoint(host);
+            host.release();
+        });
+        publishIndexChanges();
+    }
 
-        for (Map.Entry<String, Integer> entry : lemmas.entrySet()) {
-            String lemmaText = entry.getKey();
-            Lemma lemma = lemmaCache.get(lemmaText);
+    private boolean awaitPipeline(CrawlPipeline stoppedPipeline) {
+        try {
+            return stoppedPipeline.awaitTermination(crawlerSettings.getShutdownTimeoutSeconds(), TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            log.error("Ошибка при ожидании завершения конвейера индексации", e);
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 
-            if (lemma == null) {
-                lemma = lemmaRepository.findByLemmaAndSite(lemmaText, siteEntity).orElse(null);
-                if (lemma != null) {
-                    lemmaCache.put(lemmaText, lemma);
+    /**
+     * Выполняет action в отдельном потоке, когда потоки остановленного конвейера выйдут.
+     */
+    private void afterPipelineTermination(CrawlPipeline stoppedPipeline, Runnable action) {
+        Thread waiter = new Thread(() -> {
+            while (!awaitPipeline(stoppedPipeline)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
                 }
+                log.warn("Конвейер индексации все еще завершает работу");
             }
+            action.run();
+        }, "crawl-pipeline-shutdown");
+        waiter.setDaemon(true);
+        waiter.start();
+    }
 
-            if (lemma == null) {
-                lemma = new Lemma();
-                lemma.setLemma(lemmaText);
-                lemma.setFrequency(1);
-                lemma.setSite(siteEntity);
-                lemmasToSave.add(lemma);
-                lemmaCache.put(lemmaText, lemma);
-            } else {
-                lemma.setFrequency(lemma.getFrequency() + 1);
-                lemmasToUpdate.add(lemma);
-            }
+    private void stopCheckpointTimer() {
+        ScheduledExecutorService timer = checkpointTimer;
+        if (timer != null) {
+            timer.shutdownNow();
         }
+    }
 
-        if (!lemmasToSave.isEmpty()) {
-            lemmaRepository.saveAll(lemmasToSave);
+    private void saveCheckpoint(HostQueue host) {
+        try {
+            checkpointService.save(host, incrementalMode);
+        } catch (Exception e) {
+            log.error("Ошибка при сохранении контрольной точки сайта {}", host.getSite().getUrl(), e);
         }
-        if (!lemmasToUpdate.isEmpty()) {
-            lemmaRepository.saveAll(lemmasToUpdate);
+    }
+
+    private VisitedUrlSet createVisitedUrlSet() {
+        return new VisitedUrlSet(crawlerSettings.getVisitedMaxUrls(),
+                crawlerSettings.isVisitedBloomFilter(), crawlerSettings.getVisitedBloomFalsePositiveRate());
+    }
+
+    private void clearDatabase() {
+        indexStore.resetAll();
+        partitionManager.dropAll();
+        siteCounters.clear();
+        activeHosts.clear();
+        resultCache.invalidate();
+    }
+
+    /**
+     * Сообщает поиску, что индекс изменился: сбрасывает кеш результатов живого индекса и заказывает новый снимок.
+     * Внутри транзакции это делается только после ее фиксации, иначе поиск успел бы прочитать старые данные.
+     */
+    private void publishIndexChanges() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    snapshotManager.invalidateLiveResults();
+                    snapshotManager.requestRebuild();
+                }
+            });
+        } else {
+            snapshotManager.invalidateLiveResults();
+            snapshotManager.requestRebuild();
         }
     }
 
+    /**
+     * Обновляет сохраненную страницу и передает в индекс ее новый набор лемм.
+     */
+    private void updatePageContent(Page existingPage, Page freshPage, Map<String, Integer> lemmas) {
+        existingPage.setCode(freshPage.getCode());
+        existingPage.setContent(freshPage.getContent());
+        existingPage.setTitle(freshPage.getTitle());
+        existingPage.setText(freshPage.getText());
+        existingPage.setLemmaOffsets(freshPage.getLemmaOffsets());
+        existingPage.setSimhash(freshPage.getSimhash());
+        existingPage.setDuplicateOf(freshPage.getDuplicateOf());
+        existingPage.setCrawledAt(freshPage.getCrawledAt());
+        applyValidators(existingPage, freshPage.getEtag(), freshPage.getLastModified());
+        int wordCount = wordCount(lemmas);
+        siteCounters.addWords(existingPage.getSite(), wordCount - existingPage.getWordCount());
+        existingPage.setWordCount(wordCount);
+        savePage(existingPage);
+        indexStore.updatePage(existingPage.getSite(), existingPage.getId(), lemmas);
+        log.debug("Страница {} обновлена", existingPage.getPath());
+    }
 
     private void cleanLemmaAndIndex(Page page) {
-        Page existingPage = pageRepository.findByPath(page.getPath());
+        Page existingPage = pageRepository.findBySiteAndPath(page.getSite(), page.getPath());
         if (existingPage != null) {
-            indexRepository.deleteByPage(existingPage);
-            lemmaRepository.deleteAll(existingPage.getIndexes().stream().map(Index::getLemma).toList());
-            pageRepository.delete(existingPage);
+            removeStoredPage(existingPage);
+        }
+    }
+
+    /**
+     * Удаляет сохраненную страницу вместе с ее записями индекса и вычитает ее из счетчиков сайта.
+     */
+    private void removeStoredPage(Page existingPage) {
+        indexStore.removePage(existingPage.getSite(), existingPage.getId());
+        pageContentRepository.deleteById(existingPage.getId());
+        pageRepository.delete(existingPage);
+        siteCounters.addPages(existingPage.getSite(), -1);
+        siteCounters.addWords(existingPage.getSite(), -existingPage.getWordCount());
+    }
+
+    /**
+     * После полной повторной индексации удаляет страницы, до которых обход не дошел:
+     * на них больше не ведут ссылки. Если часть ссылок была отброшена,
+     * непосещенные страницы могут быть живыми, и удаление пропускается.
+     */
+    private void removeUnvisitedPages(Site siteEntity, HostQueue host) {
+        Instant startedAt = siteEntity.getCrawlStartedAt();
+        if (startedAt == null) {
+            return;
+        }
+        if (host.hasDroppedLinks()) {
+            log.warn("Часть ссылок сайта {} не попала в обход, непосещенные страницы не удаляются", siteEntity.getUrl());
+            return;
+        }
+        List<Page> unvisited = pageRepository.findNotCrawledSince(siteEntity, startedAt);
+        unvisited.forEach(this::removeStoredPage);
+        if (!unvisited.isEmpty()) {
+            log.info("Удалено {} страниц сайта {}, до которых обход не дошел", unvisited.size(), siteEntity.getUrl());
         }
     }
 
+    /**
+     * Собирает леммы текста страницы и сохраняет в ней позиции их слов для сниппетов.
+     */
+    private Map<String, Integer> collectLemmas(Page page) {
+        Map<String, int[]> offsets = wordService.collectLemmaOffsets(page.getText());
+        page.setLemmaOffsets(LemmaOffsets.encode(offsets));
+        return WordService.countLemmas(offsets);
+    }
+
+    private static int wordCount(Map<String, Integer> lemmas) {
+        return lemmas.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
     private void indexSite(SiteFromConfig site) {
         String url = site.getUrl();
         Site siteEntity = siteRepository.findByUrl(url);
         if (siteEntity != null) {
-            pageRepository.deleteAllBySite(siteEntity);
+            if (!incrementalMode) {
+                partitionManager.truncatePartitions(siteEntity.getId());
+                indexStore.resetSite(siteEntity);
+                siteCounters.reset(siteEntity);
+            }
+            siteEntity.setCrawlStartedAt(Instant.now());
             updateSiteStatus(siteEntity, Status.INDEXING, null);
         } else {
             siteEntity = createNewSite(url, site.getName());
         }
-        ForkJoinPool pool = new ForkJoinPool(MAX_POOL_SIZE);
-        activePools.put(siteEntity, pool);
+        HostQueue host = new HostQueue(siteEntity, crawlerSettings.getRequestDelayMs(),
+                crawlerSettings.getMaxQueuedUrlsPerHost(), createVisitedUrlSet());
+        activeHosts.put(siteEntity, host);
+        duplicateIndexes.put(siteEntity, createDuplicateIndex(siteEntity));
+    }
 
-        Site finalSiteEntity = siteEntity;
-        pool.execute(() -> indexSitePages(finalSiteEntity, url));
+    /**
+     * Создает индекс отпечатков сайта и заполняет его последними сохраненными страницами,
+     * чтобы при повторной индексации копии находились и среди старых страниц.
+     */
+    private NearDuplicateIndex createDuplicateIndex(Site site) {
+        int capacity = crawlerSettings.getNearDuplicateCapacity();
+        NearDuplicateIndex index = new NearDuplicateIndex(crawlerSettings.getNearDuplicateDistance(), capacity);
+        List<Object[]> fingerprints = pageRepository.findRecentFingerprints(site, PageRequest.of(0, capacity));
+        for (int i = fingerprints.size() - 1; i >= 0; i--) {
+            index.add((Long) fingerprints.get(i)[1], (Integer) fingerprints.get(i)[0]);
+        }
+        return index;
     }
 
-    private void indexSitePages(Site siteEntity, String url) {
+    private void fingerprint(Page page) {
+        long simhash = SimHash.of(page.getText(), crawlerSettings.getNearDuplicateMinWords());
+        page.setSimhash(simhash == SimHash.NONE ? null : simhash);
+    }
+
+    private void finishSite(Site siteEntity, Throwable e) {
         try {
-            ForkJoinPool.commonPool().invoke(new PageTask(siteEntity, url));
-            updateSiteStatus(siteEntity, Status.INDEXED, null);
-        } catch (Exception e) {
-            if (!Thread.currentThread().isInterrupted()) {
-                updateSiteStatus(siteEntity, Status.FAILED, e.toString());
-                log.error("Ошибка при индексации сайта: {}", siteEntity.getUrl(), e);
+            HostQueue activeHost = activeHosts.get(siteEntity);
+            if (activeHost != null) {
+                if (e == null && incrementalMode) {
+                    removeUnvisitedPages(siteEntity, activeHost);
+                }
+                indexStore.complete(siteEntity);
+                siteCounters.flush();
+                if (e == null) {
+                    updateSiteStatus(siteEntity, Status.INDEXED, null);
+                    checkpointService.delete(siteEntity);
+                } else {
+                    updateSiteStatus(siteEntity, Status.FAILED, e.toString());
+                    log.error("Ошибка при индексации сайта: {}", siteEntity.getUrl(), e);
+                }
             }
         } finally {
-            activePools.remove(siteEntity);
+            HostQueue host = activeHosts.remove(siteEntity);
+            if (host != null) {
+                host.release();
+            }
+            duplicateIndexes.remove(siteEntity);
             checkAndFinishIndexing();
         }
     }
@@ -242,8 +509,13 @@ public class IndexingServiceImpl implements IndexingService {
 
 
     private synchronized void checkAndFinishIndexing() {
-        if (activePools.isEmpty()) {
+        if (activeHosts.isEmpty() && indexingInProgress) {
             indexingInProgress = false;
+            stopCheckpointTimer();
+            // Метод вызывается из потока конвейера, поэтому ждать его остановки здесь нельзя
+            CrawlPipeline finishedPipeline = pipeline;
+            finishedPipeline.shutdownNow();
+            afterPipelineTermination(finishedPipeline, this::publishIndexChanges);
             log.info("Индексация завершена.");
         }
     }
@@ -254,7 +526,10 @@ public class IndexingServiceImpl implements IndexingService {
         site.setName(name);
         site.setStatus(Status.INDEXING);
         site.setStatusTime(Instant.now());
-        return siteRepository.save(site);
+        site.setCrawlStartedAt(site.getStatusTime());
+        siteRepository.save(site);
+        partitionManager.createPartitions(site.getId());
+        return site;
     }
 
     private Page createPage(Site site, Document doc) {
@@ -267,6 +542,9 @@ public class IndexingServiceImpl implements IndexingService {
         page.setPath(doc.baseUri().replaceAll("https?://[^/]+", ""));
         page.setCode(doc.connection().response().statusCode());
         page.setContent(doc.html());
+        page.setTitle(doc.title());
+        page.setText(doc.text());
+        page.setCrawledAt(Instant.now());
         return page;
     }
 
@@ -274,91 +552,191 @@ public class IndexingServiceImpl implements IndexingService {
         return IGNORED_EXTENSIONS.stream().anyMatch(url::endsWith);
     }
 
-    private Document connectToPage(String url) throws IOException, InterruptedException {
+    private void savePage(Page page) {
+        pageRepository.save(page);
+        pageContentRepository.save(new PageContent(page.getId(), page.getSite().getId(), page.getContent()));
+    }
+
+    private String pathOf(String url) {
+        String path = url.replaceAll("https?://[^/]+", "");
+        return path.isEmpty() ? "/" : path;
+    }
+
+    private void applyValidators(Page page, String etag, String lastModified) {
+        page.setEtag(etag);
+        page.setLastModified(lastModified);
+        page.setContentHash(hashContent(page.getContent()));
+    }
+
+    private String hashContent(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Выполняет запрос к странице. Если передана сохраненная версия страницы,
+     * запрос делается условным: при неизменной странице сервер ответит 304 без тела.
+     */
+    private Connection.Response connectToPage(String url, Page existingPage) throws IOException {
         if (isIgnoredExtension(url)) {
             log.warn("Пропуск страницы с игнорируемым расширением: {}", url);
             return null;
         }
-        Thread.sleep(REQUEST_DELAY_MS);
-        return Jsoup.connect(url).timeout(CONNECTION_TIMEOUT_MS)
-                .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36")
-                .referrer("http://www.google.com")
-                .get();
+        Connection connection = Jsoup.connect(url).timeout(crawlerSettings.getConnectionTimeoutMs())
+                .userAgent(crawlerSettings.getUserAgent())
+                .referrer(crawlerSettings.getReferrer());
+        if (existingPage != null && existingPage.getEtag() != null) {
+            connection.header("If-None-Match", existingPage.getEtag());
+        }
+        if (existingPage != null && existingPage.getLastModified() != null) {
+            connection.header("If-Modified-Since", existingPage.getLastModified());
+        }
+        return connection.execute();
     }
 
-    private void indexPageContent(Page page) {
-        log.debug("Начало индексации контента страницы: {}", page.getPath());
-        String content = page.getContent();
-        Map<String, Integer> lemmas = wordService.collectLemmas(content);
+    private void indexPageContent(Page page, Map<String, Integer> lemmas) {
         log.debug("Найдено {} уникальных лемм на странице {}", lemmas.size(), page.getPath());
-        List<Index> indexEntities = new ArrayList<>();
+        indexStore.addPage(page.getSite(), page.getId(), lemmas);
+    }
 
-        // Пакетное сохранение лемм
-        saveOrUpdateLemmasInBatch(lemmas, page.getSite());
+    private class PageCrawlProcessor implements PageProcessor {
 
-        for (Map.Entry<String, Integer> entry : lemmas.entrySet()) {
-            String lemmaText = entry.getKey();
-            int count = entry.getValue();
+        @Override
+        public List<String> seed(HostQueue host) {
+            SiteSeed seed = siteSeeder.seed(host.getSite().getUrl());
+            host.configure(seed.getRules(), seed.getDelayMs());
+            return seed.getUrls();
+        }
 
-            Lemma lemma = lemmaCache.get(lemmaText);
-            if (lemma == null) {
-                lemma = lemmaRepository.findByLemmaAndSite(lemmaText, page.getSite()).orElseThrow();
-                lemmaCache.put(lemmaText, lemma);
+        @Override
+        public void fetch(PageWork work) throws IOException {
+            if (!indexingInProgress) {
+                return;
             }
-
-            Index index = new Index();
-            index.setPage(page);
-            index.setLemma(lemma);
-            index.setRank(count);
-            indexEntities.add(index);
+            Page existingPage = incrementalMode
+                    ? pageRepository.findBySiteAndPath(work.getHost().getSite(), pathOf(work.getUrl()))
+                    : null;
+            work.setExistingPage(existingPage);
+            if (existingPage != null) {
+                existingPage.setCrawledAt(Instant.now());
+                pageRepository.markCrawled(existingPage.getId(), existingPage.getCrawledAt());
+            }
+            Connection.Response response;
+            try {
+                response = connectToPage(work.getUrl(), existingPage);
+            } catch (HttpStatusException e) {
+                if (existingPage != null && (e.getStatusCode() == 404 || e.getStatusCode() == 410)) {
+                    work.setGone(true);
+                    return;
+                }
+                throw e;
+            }
+            if (response == null) {
+                return;
+            }
+            if (response.statusCode() == 304 && existingPage != null) {
+                work.setNotModified(true);
+                return;
+            }
+            work.setEtag(response.header("ETag"));
+            work.setLastModified(response.header("Last-Modified"));
+            work.setDocument(response.parse());
         }
 
-        // Пакетное сохранение индексов
-        indexRepository.saveAll(indexEntities);
-        log.debug("Сохранено {} индексов для страницы {}", indexEntities.size(), page.getPath());
-    }
-
-    private class PageTask extends RecursiveAction {
-        private final Site site;
-        private final String url;
-        private static final ConcurrentSkipListSet<String> visitedLinks = new ConcurrentSkipListSet<>();
+        @Override
+        public List<String> parse(PageWork work) {
+            Site site = work.getHost().getSite();
+            Page existingPage = work.getExistingPage();
+            Document doc;
+            if (work.isNotModified()) {
+                String content = pageContentRepository.findById(existingPage.getId())
+                        .map(PageContent::getBody).orElse("");
+                doc = Jsoup.parse(content, work.getUrl());
+            } else {
+                doc = work.getDocument();
+                Page page = createPage(site, doc);
+                applyValidators(page, work.getEtag(), work.getLastModified());
+                if (existingPage == null || !page.getContentHash().equals(existingPage.getContentHash())) {
+                    work.setPage(page);
+                }
+            }
+            List<String> links = new ArrayList<>();
+            Elements elements = doc.select("a[href]");
+            elements.forEach(link -> {
+                String absUrl = link.absUrl("href");
+                if (indexingInProgress && isValidLink(absUrl) && absUrl.startsWith(site.getUrl())) {
+                    links.add(absUrl);
+                }
+            });
+            return links;
+        }
 
-        private PageTask(Site site, String url) {
-            this.site = site;
-            this.url = url;
+        @Override
+        public void lemmatize(PageWork work) {
+            Page page = work.getPage();
+            fingerprint(page);
+            NearDuplicateIndex duplicates = duplicateIndexes.get(work.getHost().getSite());
+            if (duplicates != null && page.getSimhash() != null) {
+                int pageId = work.getExistingPage() != null ? work.getExistingPage().getId() : 0;
+                page.setDuplicateOf(duplicates.find(page.getSimhash(), pageId));
+            }
+            if (page.getDuplicateOf() != null) {
+                log.debug("Страница {} почти совпадает со страницей id={}, леммы не собираются",
+                        page.getPath(), page.getDuplicateOf());
+                work.setLemmas(Collections.emptyMap());
+                return;
+            }
+            work.setLemmas(collectLemmas(page));
         }
 
         @Override
-        protected void compute() {
-            if (!indexingInProgress || visitedLinks.contains(url)) {
+        public void persist(PageWork work) {
+            Page page = work.getPage();
+            if (!indexingInProgress) {
                 return;
             }
-            visitedLinks.add(url);
-            List<PageTask> tasks = new ArrayList<>();
-            try {
-                Document doc = connectToPage(url);
-                Page page = createPage(site, doc);
-                if (page != null && !pageRepository.existsByPath(page.getPath())) {
-                    pageRepository.save(page);
-                    site.setStatusTime(Instant.now());
-                    indexPageContent(page);
-                    Elements links = doc.select("a[href]");
-                    links.forEach(link -> {
-                        String absUrl = link.absUrl("href");
-                        if (indexingInProgress && !visitedLinks.contains(absUrl) && isValidLink(absUrl) && absUrl.startsWith(site.getUrl())) {
-                            tasks.add(new PageTask(site, absUrl));
-                        }
-                    });
-                }
-            } catch (IOException | InterruptedException e) {
-                log.error("Ошибка при подключении к странице: {}", url);
+            if (work.isGone()) {
+                removeStoredPage(work.getExistingPage());
+                log.info("Страница {} удалена с сайта и убрана из индекса", work.getExistingPage().getPath());
                 return;
             }
-            invokeAll(tasks);
+            if (work.getExistingPage() != null) {
+                updatePageContent(work.getExistingPage(), page, work.getLemmas());
+                rememberFingerprint(work.getHost().getSite(), page, work.getExistingPage().getId());
+                return;
+            }
+            // После возобновления страница уже может быть в базе, а ее записи индекса - потеряны
+            // вместе с незаписанным буфером, поэтому она обновляется, а не пропускается
+            Page storedPage = pageRepository.findBySiteAndPath(page.getSite(), page.getPath());
+            if (storedPage != null) {
+                updatePageContent(storedPage, page, work.getLemmas());
+                rememberFingerprint(work.getHost().getSite(), page, storedPage.getId());
+                return;
+            }
+            page.setWordCount(wordCount(work.getLemmas()));
+            savePage(page);
+            siteCounters.addPages(page.getSite(), 1);
+            siteCounters.addWords(page.getSite(), page.getWordCount());
+            page.getSite().setStatusTime(Instant.now());
+            if (page.getDuplicateOf() == null) {
+                indexPageContent(page, work.getLemmas());
+                rememberFingerprint(work.getHost().getSite(), page, page.getId());
+            }
+        }
+
+        private void rememberFingerprint(Site site, Page page, int pageId) {
+            NearDuplicateIndex duplicates = duplicateIndexes.get(site);
+            if (duplicates != null && page.getSimhash() != null && page.getDuplicateOf() == null) {
+                duplicates.add(page.getSimhash(), pageId);
+            }
         }
 
         private boolean isValidLink(String url) {
             return !url.contains("#") && !url.contains("?");
         }
     }
-}
\ No newline at end of file
+}
@@ -10,13 +10,16 @@ import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.TotalStatistics;
 import searchengine.model.Site;
-import searchengine.repositories.LemmaRepository;
-import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
+import searchengine.services.interfaces.IndexingService;
 import searchengine.services.interfaces.StatisticsService;
+import searchengine.services.storage.SiteCounters;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -25,19 +28,23 @@ public class StatisticsServiceImpl implements StatisticsService {
 
     private final SitesList sites;
     private final SiteRepository siteRepository;
-    private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
+    private final SiteCounters siteCounters;
+    private final IndexingService indexingService;
 
     @Override
     public StatisticsResponse getStatistics() {
         log.info("Запрос статистики");
         TotalStatistics total = new TotalStatistics();
         total.setSites(sites.getSites().size());
-        total.setIndexing(true);
+        total.setIndexing(indexingService.isIndexing());
         log.debug("Всего сайтов в конфигурации: {}", sites.getSites().size());
 
         List<DetailedStatisticsItem> detailed = new ArrayList<>();
         List<SiteFromConfig> sitesList = sites.getSites();
+        Map<String, Site> sitesByUrl = siteRepository.findAll().stream()
+                .collect(Collectors.toMap(Site::getUrl, Function.identity()));
+        int totalPages = 0;
+        int totalLemmas = 0;
 
         for (SiteFromConfig siteFromConfig : sitesList) {
             log.debug("Обработка статистики для сайта: {}", siteFromConfig.getUrl());
@@ -45,10 +52,12 @@ public class StatisticsServiceImpl implements StatisticsService {
             item.setName(siteFromConfig.getName());
             item.setUrl(siteFromConfig.getUrl());
 
-            Site site = siteRepository.findByUrl(siteFromConfig.getUrl());
+            Site site = sitesByUrl.get(siteFromConfig.getUrl());
             if (site != null) {
-                int pages = pageRepository.findAllBySite(site).size();
-                int lemmas = lemmaRepository.findAllBySite(site).size();
+                int pages = siteCounters.getPages(site);
+                int lemmas = siteCounters.getLemmas(site);
+                totalPages += pages;
+                totalLemmas += lemmas;
                 log.debug("Найдено для сайта {}: {} страниц, {} лемм", site.getUrl(), pages, lemmas);
                 item.setStatus(site.getStatus().toString());
                 item.setError(site.getLastError());
@@ -65,8 +74,8 @@ public class StatisticsServiceImpl implements StatisticsService {
             }
             detailed.add(item);
         }
-        total.setPages(pageRepository.findAll().size());
-        total.setLemmas(lemmaRepository.findAll().size());
+        total.setPages(totalPages);
+        total.setLemmas(totalLemmas);
         StatisticsResponse response = new StatisticsResponse();
         StatisticsData data = new StatisticsData();
         data.setTotal(total);
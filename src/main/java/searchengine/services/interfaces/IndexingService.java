@@ -1,11 +1,18 @@
 package searchengine.services.interfaces;
 
 import searchengine.dto.indexing.IndexingResponse;
+import searchengine.dto.indexing.PipelineStatisticsResponse;
 
 public interface IndexingService {
-    IndexingResponse startIndexing();
+    IndexingResponse startIndexing(boolean incremental);
 
     IndexingResponse stopIndexing();
 
+    IndexingResponse resumeIndexing();
+
     IndexingResponse indexSinglePage(String url);
+
+    PipelineStatisticsResponse getPipelineStatistics();
+
+    boolean isIndexing();
 }
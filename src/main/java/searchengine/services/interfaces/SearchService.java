@@ -1,7 +1,10 @@
 package searchengine.services.interfaces;
 
+import searchengine.dto.search.SearchCacheStatisticsResponse;
 import searchengine.dto.search.SearchResponse;
 
 public interface SearchService {
     SearchResponse search(String query, String siteUrl, int offset, int limit);
+
+    SearchCacheStatisticsResponse getCacheStatistics();
 }
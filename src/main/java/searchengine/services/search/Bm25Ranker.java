@@ -0,0 +1,129 @@
+package searchengine.services.search;
+
+import searchengine.model.Site;
+import searchengine.services.storage.Bm25;
+import searchengine.services.storage.PostingIntersection;
+import searchengine.services.storage.PostingList;
+import searchengine.services.storage.RankedPages;
+import searchengine.services.storage.TopPages;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ранжирование по BM25 над списками страниц лемм из {@link SearchSource}.
+ * <p>
+ * Списки пересекаются от самой редкой леммы. Для каждой найденной страницы сначала считается верхняя
+ * граница оценки по одним tf - оценка на странице нулевой длины, - и страницы обходятся по убыванию
+ * границы. Длины страниц читаются пачками только для тех страниц, чья граница выше худшей из
+ * уже отобранных: как только граница пачки опускается ниже, остальные страницы в топ не попадут.
+ * Условия на расположение слов проверяются в том же обходе и только для страниц, которые еще могут
+ * попасть в топ, поэтому номера слов частых лемм не читаются для всего пересечения. Общее число
+ * найденных страниц в этом случае оценивается по доле подошедших среди проверенных.
+ */
+final class Bm25Ranker {
+    private static final int BATCH_SIZE = 256;
+
+    private Bm25Ranker() {
+    }
+
+    /**
+     * @param lemmas леммы запроса от самой редкой к самой частой
+     */
+    static RankedPages rank(SearchSource source, List<Site> sites, List<String> lemmas, PositionalQuery positional,
+                            Bm25 bm25, int limit) {
+        if (lemmas.isEmpty()) {
+            return RankedPages.EMPTY;
+        }
+        TopPages top = new TopPages(limit);
+        for (Site site : sites) {
+            rankSite(source, site, lemmas, positional, bm25, top);
+        }
+        return top.toRankedPages();
+    }
+
+    private static void rankSite(SearchSource source, Site site, List<String> lemmas, PositionalQuery positional,
+                                 Bm25 bm25, TopPages top) {
+        int pageCount = source.getPageCount(site);
+        double[] idf = new double[lemmas.size()];
+        PostingIntersection candidates = null;
+        for (int j = 0; j < lemmas.size(); j++) {
+            PostingList list = source.getPostingList(site, lemmas.get(j));
+            idf[j] = bm25.idf(pageCount, list.size());
+            candidates = (candidates == null) ? PostingIntersection.of(list, lemmas.size()) : candidates.retain(list);
+            if (candidates.isEmpty()) {
+                return;
+            }
+        }
+        int size = candidates.size();
+        double[] bounds = new double[size];
+        Integer[] order = new Integer[size];
+        for (int c = 0; c < size; c++) {
+            for (int j = 0; j < idf.length; j++) {
+                bounds[c] += bm25.upperBound(candidates.rank(c, j), idf[j]);
+            }
+            order[c] = c;
+        }
+        Arrays.sort(order, (first, second) -> Double.compare(bounds[second], bounds[first]));
+
+        double averageLength = source.getAverageLength(site);
+        int checked = 0;
+        int matched = 0;
+        for (int from = 0; from < size; from += BATCH_SIZE) {
+            // С условиями на расположение первая пачка проверяется всегда, чтобы было по чему оценить общее число
+            if ((from > 0 || positional.isEmpty()) && bounds[order[from]] < top.threshold()) {
+                break;
+            }
+            int to = Math.min(from + BATCH_SIZE, size);
+            int[] pageIds = new int[to - from];
+            for (int k = from; k < to; k++) {
+                pageIds[k - from] = candidates.pageId(order[k]);
+            }
+            if (!positional.isEmpty()) {
+                pageIds = retainPositionalMatches(source, site, pageIds, positional);
+            }
+            checked += to - from;
+            matched += pageIds.length;
+            if (pageIds.length == 0) {
+                continue;
+            }
+            Map<Integer, Integer> lengths = source.getPageLengths(site, pageIds);
+            for (int k = from; k < to; k++) {
+                int c = order[k];
+                if (bounds[c] < top.threshold()) {
+                    break;
+                }
+                if (!positional.isEmpty() && Arrays.binarySearch(pageIds, candidates.pageId(c)) < 0) {
+                    continue;
+                }
+                int length = lengths.getOrDefault(candidates.pageId(c), 0);
+                double score = 0;
+                for (int j = 0; j < idf.length; j++) {
+                    score += bm25.score(candidates.rank(c, j), length, averageLength, idf[j]);
+                }
+                top.offer(candidates.pageId(c), score);
+            }
+        }
+        if (positional.isEmpty() || checked == size) {
+            top.countMatches(positional.isEmpty() ? size : matched);
+        } else {
+            top.countMatches(matched + (int) ((long) (size - checked) * matched / checked));
+        }
+    }
+
+    /**
+     * @return id страниц пачки, на которых выполнены условия на расположение слов, по возрастанию
+     */
+    private static int[] retainPositionalMatches(SearchSource source, Site site, int[] pageIds,
+                                                 PositionalQuery positional) {
+        Set<String> lemmas = positional.getLemmas();
+        Map<Integer, byte[]> offsets = source.getLemmaOffsets(site, pageIds);
+        return Arrays.stream(pageIds)
+                .filter(pageId -> offsets.containsKey(pageId)
+                        && positional.matches(LemmaOffsets.decodeWordNumbers(offsets.get(pageId), lemmas)))
+                .sorted()
+                .toArray();
+    }
+}
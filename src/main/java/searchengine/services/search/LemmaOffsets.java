@@ -0,0 +1,126 @@
+package searchengine.services.search;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Позиции слов страницы по леммам в компактном двоичном виде для колонки page.lemma_offsets.
+ * <p>
+ * Для каждой леммы записываются длина и байты леммы в UTF-8, длина блока вхождений и сам блок:
+ * число вхождений, затем для каждого вхождения прирост номера слова, отступ его начала от конца
+ * предыдущего и длина слова. Номера слов нужны для фраз и близости слов, символьные позиции - для сниппетов.
+ * Все числа записываются varint, поэтому блоки лемм, которых нет в запросе, пропускаются без разбора.
+ */
+public final class LemmaOffsets {
+
+    private LemmaOffsets() {
+    }
+
+    /**
+     * @param offsets тройки (номер слова, начало, конец) слов в тексте по каждой лемме, по возрастанию
+     */
+    public static byte[] encode(Map<String, int[]> offsets) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        for (Map.Entry<String, int[]> entry : offsets.entrySet()) {
+            byte[] lemma = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            int[] triples = entry.getValue();
+            block.reset();
+            writeVarInt(block, triples.length / 3);
+            int previousNumber = 0;
+            int previousEnd = 0;
+            for (int i = 0; i < triples.length; i += 3) {
+                writeVarInt(block, triples[i] - previousNumber);
+                writeVarInt(block, triples[i + 1] - previousEnd);
+                writeVarInt(block, triples[i + 2] - triples[i + 1]);
+                previousNumber = triples[i];
+                previousEnd = triples[i + 2];
+            }
+            writeVarInt(out, lemma.length);
+            out.writeBytes(lemma);
+            writeVarInt(out, block.size());
+            out.writeBytes(block.toByteArray());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return тройки (номер слова, начало, конец) только для перечисленных лемм, которые есть на странице
+     */
+    public static Map<String, int[]> decode(byte[] data, Set<String> lemmas) {
+        return decode(data, lemmas, false);
+    }
+
+    /**
+     * @return номера слов по возрастанию только для перечисленных лемм, которые есть на странице
+     */
+    public static Map<String, int[]> decodeWordNumbers(byte[] data, Set<String> lemmas) {
+        return decode(data, lemmas, true);
+    }
+
+    private static Map<String, int[]> decode(byte[] data, Set<String> lemmas, boolean wordNumbersOnly) {
+        Map<String, byte[]> wanted = new HashMap<>();
+        lemmas.forEach(lemma -> wanted.put(lemma, lemma.getBytes(StandardCharsets.UTF_8)));
+        Map<String, int[]> result = new HashMap<>();
+        int[] position = {0};
+        while (position[0] < data.length && result.size() < wanted.size()) {
+            int lemmaLength = readVarInt(data, position);
+            int lemmaStart = position[0];
+            position[0] += lemmaLength;
+            int blockLength = readVarInt(data, position);
+            int blockEnd = position[0] + blockLength;
+            String lemma = find(wanted, data, lemmaStart, lemmaStart + lemmaLength);
+            if (lemma != null) {
+                int count = readVarInt(data, position);
+                int stride = wordNumbersOnly ? 1 : 3;
+                int[] values = new int[count * stride];
+                int number = 0;
+                int end = 0;
+                for (int i = 0; i < values.length; i += stride) {
+                    number += readVarInt(data, position);
+                    int start = end + readVarInt(data, position);
+                    end = start + readVarInt(data, position);
+                    values[i] = number;
+                    if (!wordNumbersOnly) {
+                        values[i + 1] = start;
+                        values[i + 2] = end;
+                    }
+                }
+                result.put(lemma, values);
+            }
+            position[0] = blockEnd;
+        }
+        return result;
+    }
+
+    private static String find(Map<String, byte[]> wanted, byte[] data, int from, int to) {
+        for (Map.Entry<String, byte[]> entry : wanted.entrySet()) {
+            byte[] lemma = entry.getValue();
+            if (Arrays.equals(lemma, 0, lemma.length, data, from, to)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = data[position[0]++];
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return value;
+    }
+}
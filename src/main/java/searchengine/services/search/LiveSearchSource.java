@@ -0,0 +1,108 @@
+package searchengine.services.search;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import searchengine.model.Page;
+import searchengine.model.Site;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.storage.Bm25;
+import searchengine.services.storage.IndexStore;
+import searchengine.services.storage.RankedPages;
+import searchengine.services.storage.RankingIndexStore;
+import searchengine.services.storage.SiteCounters;
+
+import java.sql.PreparedStatement;
+import java.util.*;
+
+/**
+ * Поиск по текущему состоянию индекса: каждый запрос обращается к {@link IndexStore} и базе данных.
+ */
+@Component
+@RequiredArgsConstructor
+public class LiveSearchSource implements SearchSource {
+    private final IndexStore indexStore;
+    private final SiteCounters siteCounters;
+    private final PageRepository pageRepository;
+    private final SiteRepository siteRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<Site> findSites(String siteUrl) {
+        Site site = (siteUrl != null) ? siteRepository.findByUrl(siteUrl) : null;
+        return (site == null) ? siteRepository.findAll() : Collections.singletonList(site);
+    }
+
+    @Override
+    public int getLemmaCount(Site site) {
+        return siteCounters.getLemmas(site);
+    }
+
+    @Override
+    public int getFrequency(Site site, String lemma) {
+        return indexStore.getFrequency(site, lemma);
+    }
+
+    @Override
+    public int getPageCount(Site site) {
+        return siteCounters.getPages(site);
+    }
+
+    @Override
+    public double getAverageLength(Site site) {
+        return Math.max((double) siteCounters.getWords(site) / Math.max(siteCounters.getPages(site), 1), 1);
+    }
+
+    @Override
+    public Map<Integer, Integer> getPageLengths(Site site, int[] pageIds) {
+        Map<Integer, Integer> lengths = new HashMap<>();
+        Integer[] ids = Arrays.stream(pageIds).boxed().toArray(Integer[]::new);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    "SELECT id, word_count FROM page WHERE site_id = ? AND id = ANY (?)");
+            statement.setInt(1, site.getId());
+            statement.setArray(2, connection.createArrayOf("integer", ids));
+            return statement;
+        }, (RowCallbackHandler) rs -> lengths.put(rs.getInt(1), rs.getInt(2)));
+        return lengths;
+    }
+
+    @Override
+    public Map<Integer, byte[]> getLemmaOffsets(Site site, int[] pageIds) {
+        Map<Integer, byte[]> offsets = new HashMap<>();
+        Integer[] ids = Arrays.stream(pageIds).boxed().toArray(Integer[]::new);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    "SELECT id, lemma_offsets FROM page WHERE site_id = ? AND id = ANY (?) AND lemma_offsets IS NOT NULL");
+            statement.setInt(1, site.getId());
+            statement.setArray(2, connection.createArrayOf("integer", ids));
+            return statement;
+        }, (RowCallbackHandler) rs -> offsets.put(rs.getInt(1), rs.getBytes(2)));
+        return offsets;
+    }
+
+    @Override
+    public Map<Integer, Float> getPostings(Site site, String lemma) {
+        return indexStore.getPostings(site, lemma);
+    }
+
+    @Override
+    public RankedPages rankPages(List<Site> sites, List<String> lemmas, PositionalQuery positional, Bm25 bm25,
+                                 int limit) {
+        // Номера слов лежат в page.lemma_offsets, поэтому запросы с фразами проверяются в приложении
+        if (positional.isEmpty() && indexStore instanceof RankingIndexStore rankingStore) {
+            return rankingStore.rankPages(sites, lemmas, bm25, limit);
+        }
+        return SearchSource.super.rankPages(sites, lemmas, positional, bm25, limit);
+    }
+
+    @Override
+    public Map<Integer, Page> findPages(List<Site> sites, Collection<Integer> pageIds) {
+        Map<Integer, Page> pages = new HashMap<>();
+        // Условие на сайт позволяет PostgreSQL читать только секции этих сайтов
+        pageRepository.findAllBySiteInAndIdIn(sites, pageIds).forEach(page -> pages.put(page.getId(), page));
+        return pages;
+    }
+}
@@ -0,0 +1,209 @@
+package searchengine.services.search;
+
+import lombok.EqualsAndHashCode;
+import searchengine.exceptions.SearchException;
+import searchengine.services.WordService;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Условия запроса на взаимное расположение слов: фразы в кавычках и близость "слово NEAR/k слово".
+ * <p>
+ * Проверяются по номерам слов страницы из {@link LemmaOffsets}: списки номеров лемм сливаются
+ * по возрастанию, текст страницы для этого не нужен.
+ */
+@EqualsAndHashCode
+public class PositionalQuery {
+    public static final PositionalQuery NONE = new PositionalQuery(List.of(), List.of());
+    /** Наибольшее k в NEAR/k: дальше слова уже не считаются близкими. */
+    public static final int MAX_NEAR_DISTANCE = 1000;
+
+    private static final Pattern PHRASE = Pattern.compile("\"([^\"]*)\"");
+    private static final Pattern NEAR = Pattern.compile("(\\S+)\\s+NEAR/(\\d+)\\s+(?=(\\S+))");
+
+    private final List<Phrase> phrases;
+    private final List<Near> nears;
+
+    private PositionalQuery(List<Phrase> phrases, List<Near> nears) {
+        this.phrases = phrases;
+        this.nears = nears;
+    }
+
+    /**
+     * Выделяет из запроса фразы в кавычках и условия NEAR/k. Слова, у которых нет леммы,
+     * внутри фразы сохраняют расстояние между соседями, а в NEAR условие отбрасывают.
+     *
+     * @throws SearchException если k в NEAR/k меньше 1 или больше {@link #MAX_NEAR_DISTANCE}
+     */
+    public static PositionalQuery parse(String query, WordService wordService) {
+        List<Phrase> phrases = new ArrayList<>();
+        StringBuilder rest = new StringBuilder(query);
+        Matcher phraseMatcher = PHRASE.matcher(query);
+        while (phraseMatcher.find()) {
+            Phrase phrase = Phrase.of(wordService.collectLemmaOffsets(phraseMatcher.group(1)));
+            if (phrase != null) {
+                phrases.add(phrase);
+            }
+            for (int i = phraseMatcher.start(); i < phraseMatcher.end(); i++) {
+                rest.setCharAt(i, ' ');
+            }
+        }
+
+        List<Near> nears = new ArrayList<>();
+        Matcher nearMatcher = NEAR.matcher(rest);
+        while (nearMatcher.find()) {
+            String first = lemmaOf(nearMatcher.group(1), wordService);
+            String second = lemmaOf(nearMatcher.group(3), wordService);
+            if (first != null && second != null) {
+                nears.add(new Near(first, second, parseDistance(nearMatcher.group(2))));
+            }
+        }
+        return phrases.isEmpty() && nears.isEmpty() ? NONE : new PositionalQuery(phrases, nears);
+    }
+
+    private static int parseDistance(String digits) {
+        // Длинная строка цифр не помещается в int, но и так больше допустимого
+        int distance = digits.length() <= 4 ? Integer.parseInt(digits) : Integer.MAX_VALUE;
+        if (distance < 1 || distance > MAX_NEAR_DISTANCE) {
+            throw new SearchException("Расстояние в NEAR/k должно быть от 1 до " + MAX_NEAR_DISTANCE);
+        }
+        return distance;
+    }
+
+    private static String lemmaOf(String word, WordService wordService) {
+        Set<String> lemmas = wordService.collectLemmaOffsets(word).keySet();
+        return lemmas.size() == 1 ? lemmas.iterator().next() : null;
+    }
+
+    public boolean isEmpty() {
+        return phrases.isEmpty() && nears.isEmpty();
+    }
+
+    /**
+     * @return леммы, номера слов которых нужны для проверки
+     */
+    public Set<String> getLemmas() {
+        Set<String> lemmas = new HashSet<>();
+        phrases.forEach(phrase -> lemmas.addAll(Arrays.asList(phrase.lemmas)));
+        nears.forEach(near -> {
+            lemmas.add(near.first);
+            lemmas.add(near.second);
+        });
+        return lemmas;
+    }
+
+    /**
+     * @param wordNumbers номера слов страницы по возрастанию для лемм из {@link #getLemmas()}
+     */
+    public boolean matches(Map<String, int[]> wordNumbers) {
+        return phrases.stream().allMatch(phrase -> phrase.matches(wordNumbers))
+                && nears.stream().allMatch(near -> near.matches(wordNumbers));
+    }
+
+    @EqualsAndHashCode
+    private static final class Phrase {
+        private final String[] lemmas;
+        private final int[] offsets;
+
+        private Phrase(String[] lemmas, int[] offsets) {
+            this.lemmas = lemmas;
+            this.offsets = offsets;
+        }
+
+        /**
+         * @return фраза из лемм с их номерами слов внутри фразы или null, если лемм нет
+         */
+        static Phrase of(Map<String, int[]> phraseOffsets) {
+            // Номер слова в старших 32 битах, чтобы после сортировки леммы шли в порядке фразы
+            List<String> phraseLemmas = new ArrayList<>(phraseOffsets.keySet());
+            List<Long> terms = new ArrayList<>();
+            for (int lemma = 0; lemma < phraseLemmas.size(); lemma++) {
+                int[] triples = phraseOffsets.get(phraseLemmas.get(lemma));
+                for (int i = 0; i < triples.length; i += 3) {
+                    terms.add(((long) triples[i] << 32) | lemma);
+                }
+            }
+            if (terms.isEmpty()) {
+                return null;
+            }
+            Collections.sort(terms);
+            String[] lemmas = new String[terms.size()];
+            int[] offsets = new int[terms.size()];
+            int first = (int) (terms.get(0) >>> 32);
+            for (int i = 0; i < terms.size(); i++) {
+                lemmas[i] = phraseLemmas.get((int) (long) terms.get(i));
+                offsets[i] = (int) (terms.get(i) >>> 32) - first;
+            }
+            return new Phrase(lemmas, offsets);
+        }
+
+        /**
+         * Перебирает вхождения первой леммы как начало фразы; указатели по спискам остальных лемм
+         * только продвигаются вперед, поэтому проверка линейна по длине списков.
+         */
+        boolean matches(Map<String, int[]> wordNumbers) {
+            int[][] lists = new int[lemmas.length][];
+            for (int i = 0; i < lemmas.length; i++) {
+                lists[i] = wordNumbers.get(lemmas[i]);
+                if (lists[i] == null) {
+                    return false;
+                }
+            }
+            int[] pointers = new int[lemmas.length];
+            for (int start : lists[0]) {
+                boolean found = true;
+                for (int i = 1; i < lemmas.length && found; i++) {
+                    int expected = start + offsets[i];
+                    while (pointers[i] < lists[i].length && lists[i][pointers[i]] < expected) {
+                        pointers[i]++;
+                    }
+                    if (pointers[i] == lists[i].length) {
+                        return false;
+                    }
+                    found = lists[i][pointers[i]] == expected;
+                }
+                if (found) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @EqualsAndHashCode
+    private static final class Near {
+        private final String first;
+        private final String second;
+        private final int distance;
+
+        private Near(String first, String second, int distance) {
+            this.first = first;
+            this.second = second;
+            this.distance = distance;
+        }
+
+        /**
+         * Для каждого слова первой леммы ищет двоичным поиском ближайшие слова второй леммы.
+         */
+        boolean matches(Map<String, int[]> wordNumbers) {
+            int[] firstNumbers = wordNumbers.get(first);
+            int[] secondNumbers = wordNumbers.get(second);
+            if (firstNumbers == null || secondNumbers == null) {
+                return false;
+            }
+            for (int number : firstNumbers) {
+                int index = Arrays.binarySearch(secondNumbers, number - distance);
+                index = index < 0 ? -index - 1 : index;
+                while (index < secondNumbers.length && secondNumbers[index] <= number + distance) {
+                    if (secondNumbers[index] != number) {
+                        return true;
+                    }
+                    index++;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package searchengine.services.search;
+
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.dto.search.SearchCacheStatisticsResponse;
+import searchengine.services.storage.RankedPages;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Кеш ранжированных результатов поиска по набору лемм запроса, условиям на расположение слов и сайту.
+ * <p>
+ * Хранит id найденных страниц и их релевантность, вытесняя давно не использованные записи,
+ * когда суммарное число страниц превышает search-settings.result-cache-max-pages.
+ * Каждая запись помечена поколением индекса: индексатор увеличивает поколение при любом изменении
+ * индекса, и записи старых поколений считаются промахом без обхода кеша.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SearchResultCache {
+    private final SearchSettings settings;
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedPages;
+
+    /**
+     * Возвращает хотя бы limit лучших страниц для запроса из кеша или вычисляет их.
+     *
+     * @param lemmas леммы запроса до фильтрации
+     * @param positional условия запроса на расположение слов
+     * @param siteUrl сайт или null для поиска по всем сайтам
+     */
+    public RankedPages get(Set<String> lemmas, PositionalQuery positional, String siteUrl, int limit,
+                           Supplier<RankedPages> ranking) {
+        int maxPages = settings.getResultCacheMaxPages();
+        if (maxPages <= 0) {
+            return ranking.get();
+        }
+        Key key = new Key(List.copyOf(new TreeSet<>(lemmas)), positional,
+                siteUrl == null || siteUrl.isBlank() ? null : siteUrl);
+        long currentGeneration = generation.get();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.generation == currentGeneration && entry.covers(limit)) {
+                hits.incrementAndGet();
+                return entry.pages;
+            }
+        }
+        misses.incrementAndGet();
+        RankedPages pages = ranking.get();
+        int weight = pages.getPageIds().length + 1;
+        if (weight <= maxPages) {
+            put(key, new Entry(currentGeneration, pages), maxPages);
+        }
+        return pages;
+    }
+
+    /**
+     * Делает все записи устаревшими. Сами записи удаляются при обращении или вытеснении.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+    }
+
+    public SearchCacheStatisticsResponse getStatistics() {
+        SearchCacheStatisticsResponse response = new SearchCacheStatisticsResponse();
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        response.setHits(hitCount);
+        response.setMisses(missCount);
+        response.setHitRate(hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0);
+        response.setEvictions(evictions.get());
+        response.setInvalidations(invalidations.get());
+        response.setGeneration(generation.get());
+        synchronized (entries) {
+            response.setEntries(entries.size());
+            response.setCachedPages(cachedPages);
+        }
+        response.setResult(true);
+        return response;
+    }
+
+    private void put(Key key, Entry entry, int maxPages) {
+        synchronized (entries) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                cachedPages -= previous.weight();
+            }
+            cachedPages += entry.weight();
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (cachedPages > maxPages && iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                if (eldest == entry) {
+                    continue;
+                }
+                iterator.remove();
+                cachedPages -= eldest.weight();
+                evictions.incrementAndGet();
+            }
+        }
+        log.debug("Результат запроса {} сохранен в кеш", key.lemmas);
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class Key {
+        private final List<String> lemmas;
+        private final PositionalQuery positional;
+        private final String siteUrl;
+    }
+
+    private static final class Entry {
+        private final long generation;
+        private final RankedPages pages;
+
+        private Entry(long generation, RankedPages pages) {
+            this.generation = generation;
+            this.pages = pages;
+        }
+
+        /**
+         * Записи хватает, если в ней не меньше limit страниц или все найденные страницы.
+         */
+        boolean covers(int limit) {
+            return pages.getPageIds().length >= Math.min(limit, pages.getTotal());
+        }
+
+        int weight() {
+            return pages.getPageIds().length + 1;
+        }
+    }
+}
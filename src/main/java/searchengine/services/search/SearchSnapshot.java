@@ -0,0 +1,243 @@
+package searchengine.services.search;
+
+import searchengine.model.Page;
+import searchengine.model.Site;
+import searchengine.services.storage.PostingList;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Неизменяемый снимок индекса в памяти.
+ * <p>
+ * Для каждого сайта хранится словарь лемма → номер и списки страниц по номеру леммы
+ * в виде массивов int[] id страниц (по возрастанию) и float[] рангов. Из данных страниц хранится
+ * только число слов, нужное для ранжирования, поэтому память снимка - около 8 байт на запись индекса
+ * и 8 байт на страницу и не зависит от размера текстов. Адрес, заголовок и текст страниц выдачи,
+ * а также позиции слов для фраз читаются из базы только для проверяемых и выдаваемых страниц.
+ */
+public class SearchSnapshot implements SearchSource {
+    private final List<Site> sites;
+    private final Map<String, Site> sitesByUrl;
+    private final Map<Integer, SiteIndex> siteIndexes;
+    private final Map<Integer, Integer> sitePageCounts;
+    private final Map<Integer, Long> siteWordCounts;
+    private final int[] pageIds;
+    private final int[] wordCounts;
+    private final SearchSource pageSource;
+    private final Instant builtAt = Instant.now();
+
+    private SearchSnapshot(List<Site> sites, Map<Integer, SiteIndex> siteIndexes, Map<Integer, Integer> sitePageCounts,
+                           Map<Integer, Long> siteWordCounts, int[] pageIds, int[] wordCounts,
+                           SearchSource pageSource) {
+        this.sites = sites;
+        this.sitesByUrl = new HashMap<>();
+        sites.forEach(site -> sitesByUrl.put(site.getUrl(), site));
+        this.siteIndexes = siteIndexes;
+        this.sitePageCounts = sitePageCounts;
+        this.siteWordCounts = siteWordCounts;
+        this.pageIds = pageIds;
+        this.wordCounts = wordCounts;
+        this.pageSource = pageSource;
+    }
+
+    public Instant getBuiltAt() {
+        return builtAt;
+    }
+
+    public int getPageCount() {
+        return pageIds.length;
+    }
+
+    @Override
+    public List<Site> findSites(String siteUrl) {
+        Site site = (siteUrl != null) ? sitesByUrl.get(siteUrl) : null;
+        return (site == null) ? sites : Collections.singletonList(site);
+    }
+
+    @Override
+    public int getLemmaCount(Site site) {
+        SiteIndex index = siteIndexes.get(site.getId());
+        return index != null ? index.lemmaIds.size() : 0;
+    }
+
+    @Override
+    public int getFrequency(Site site, String lemma) {
+        SiteIndex index = siteIndexes.get(site.getId());
+        Integer lemmaId = index != null ? index.lemmaIds.get(lemma) : null;
+        return lemmaId != null ? index.pageIds[lemmaId].length : 0;
+    }
+
+    @Override
+    public int getPageCount(Site site) {
+        return sitePageCounts.getOrDefault(site.getId(), 0);
+    }
+
+    @Override
+    public double getAverageLength(Site site) {
+        int pageCount = getPageCount(site);
+        return Math.max((double) siteWordCounts.getOrDefault(site.getId(), 0L) / Math.max(pageCount, 1), 1);
+    }
+
+    @Override
+    public Map<Integer, Integer> getPageLengths(Site site, int[] ids) {
+        Map<Integer, Integer> lengths = new HashMap<>(ids.length * 2);
+        for (int id : ids) {
+            int position = Arrays.binarySearch(pageIds, id);
+            if (position >= 0) {
+                lengths.put(id, wordCounts[position]);
+            }
+        }
+        return lengths;
+    }
+
+    @Override
+    public Map<Integer, byte[]> getLemmaOffsets(Site site, int[] ids) {
+        return pageSource.getLemmaOffsets(site, ids);
+    }
+
+    @Override
+    public Map<Integer, Float> getPostings(Site site, String lemma) {
+        SiteIndex index = siteIndexes.get(site.getId());
+        Integer lemmaId = index != null ? index.lemmaIds.get(lemma) : null;
+        if (lemmaId == null) {
+            return Collections.emptyMap();
+        }
+        int[] ids = index.pageIds[lemmaId];
+        float[] ranks = index.ranks[lemmaId];
+        Map<Integer, Float> postings = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            postings.put(ids[i], ranks[i]);
+        }
+        return postings;
+    }
+
+    /**
+     * Возвращает массивы снимка без копирования.
+     */
+    @Override
+    public PostingList getPostingList(Site site, String lemma) {
+        SiteIndex index = siteIndexes.get(site.getId());
+        Integer lemmaId = index != null ? index.lemmaIds.get(lemma) : null;
+        return lemmaId != null ? new PostingList(index.pageIds[lemmaId], index.ranks[lemmaId]) : PostingList.EMPTY;
+    }
+
+    /**
+     * Страницы могли измениться или быть удалены после сборки снимка: в выдачу попадает
+     * их текущее состояние, удаленные пропускаются.
+     */
+    @Override
+    public Map<Integer, Page> findPages(List<Site> sites, Collection<Integer> ids) {
+        return pageSource.findPages(sites, ids);
+    }
+
+    private static class SiteIndex {
+        private final Map<String, Integer> lemmaIds;
+        private final int[][] pageIds;
+        private final float[][] ranks;
+
+        SiteIndex(Map<String, Integer> lemmaIds, int[][] pageIds, float[][] ranks) {
+            this.lemmaIds = lemmaIds;
+            this.pageIds = pageIds;
+            this.ranks = ranks;
+        }
+    }
+
+    /**
+     * Собирает снимок. Страницы и записи индекса можно добавлять в любом порядке.
+     */
+    public static class Builder {
+        private final SearchSource pageSource;
+        private final List<Site> sites = new ArrayList<>();
+        private final Map<Integer, Integer> sitePageCounts = new HashMap<>();
+        private final Map<Integer, Long> siteWordCounts = new HashMap<>();
+        private final Map<Integer, Map<String, PackedPostings>> postings = new HashMap<>();
+        private long[] pages = new long[1024];
+        private int pageCount;
+
+        /**
+         * @param pageSource откуда читать данные страниц, которых нет в снимке
+         */
+        public Builder(SearchSource pageSource) {
+            this.pageSource = pageSource;
+        }
+
+        /**
+         * @param pageCount  число страниц сайта для BM25
+         * @param wordCount  суммарное число слов этих страниц
+         */
+        public void addSite(Site site, int pageCount, long wordCount) {
+            sites.add(site);
+            sitePageCounts.put(site.getId(), pageCount);
+            siteWordCounts.put(site.getId(), wordCount);
+        }
+
+        public void addPage(int pageId, int wordCount) {
+            if (pageCount == pages.length) {
+                pages = Arrays.copyOf(pages, pageCount * 2);
+            }
+            // id в старших 32 битах, чтобы сортировка упорядочила страницы по id
+            pages[pageCount++] = ((long) pageId << 32) | (wordCount & 0xFFFFFFFFL);
+        }
+
+        public void addPosting(Site site, String lemma, int pageId, float rank) {
+            postings.computeIfAbsent(site.getId(), id -> new HashMap<>())
+                    .computeIfAbsent(lemma, key -> new PackedPostings())
+                    .add(pageId, rank);
+        }
+
+        public SearchSnapshot build() {
+            Map<Integer, SiteIndex> siteIndexes = new HashMap<>();
+            postings.forEach((siteId, lemmas) -> {
+                Map<String, Integer> lemmaIds = new HashMap<>(lemmas.size() * 2);
+                int[][] pageIds = new int[lemmas.size()][];
+                float[][] ranks = new float[lemmas.size()][];
+                int lemmaId = 0;
+                for (Map.Entry<String, PackedPostings> entry : lemmas.entrySet()) {
+                    long[] packed = entry.getValue().sorted();
+                    pageIds[lemmaId] = new int[packed.length];
+                    ranks[lemmaId] = new float[packed.length];
+                    for (int i = 0; i < packed.length; i++) {
+                        pageIds[lemmaId][i] = (int) (packed[i] >>> 32);
+                        ranks[lemmaId][i] = Float.intBitsToFloat((int) packed[i]);
+                    }
+                    lemmaIds.put(entry.getKey(), lemmaId++);
+                }
+                siteIndexes.put(siteId, new SiteIndex(lemmaIds, pageIds, ranks));
+            });
+
+            long[] sortedPages = Arrays.copyOf(pages, pageCount);
+            Arrays.sort(sortedPages);
+            int[] pageIds = new int[pageCount];
+            int[] wordCounts = new int[pageCount];
+            for (int i = 0; i < pageCount; i++) {
+                pageIds[i] = (int) (sortedPages[i] >>> 32);
+                wordCounts[i] = (int) sortedPages[i];
+            }
+            return new SearchSnapshot(List.copyOf(sites), siteIndexes, sitePageCounts, siteWordCounts,
+                    pageIds, wordCounts, pageSource);
+        }
+    }
+
+    /**
+     * Пары (id страницы, ранг), упакованные в long: id в старших 32 битах,
+     * поэтому сортировка массива упорядочивает пары по id страницы.
+     */
+    private static class PackedPostings {
+        private long[] values = new long[4];
+        private int size;
+
+        void add(int pageId, float rank) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = ((long) pageId << 32) | (Float.floatToRawIntBits(rank) & 0xFFFFFFFFL);
+        }
+
+        long[] sorted() {
+            long[] result = Arrays.copyOf(values, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package searchengine.services.search;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import searchengine.config.IndexStoreSettings;
+import searchengine.model.Site;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.storage.IndexStore;
+import searchengine.services.storage.SiteCounters;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Выбирает источник данных для поиска.
+ * <p>
+ * Если включен index-store.search-snapshot, после запуска приложения и после изменений индекса
+ * в фоне собирается новый {@link SearchSnapshot} и атомарно заменяет предыдущий.
+ * Сборка после изменений откладывается на snapshot-rebuild-delay-ms, и все изменения за это время,
+ * например серия индексаций отдельных страниц, попадают в одну сборку.
+ * Пока первый снимок не готов, поиск идет по живому индексу.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SearchSnapshotManager {
+    private final IndexStoreSettings settings;
+    private final LiveSearchSource liveSource;
+    private final IndexStore indexStore;
+    private final SiteRepository siteRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchResultCache resultCache;
+    private final SiteCounters siteCounters;
+
+    private final AtomicReference<SearchSnapshot> snapshot = new AtomicReference<>();
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    private final ScheduledExecutorService builder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "search-snapshot-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SearchSource getSource() {
+        SearchSnapshot current = snapshot.get();
+        return current != null ? current : liveSource;
+    }
+
+    /**
+     * Сбрасывает кеш результатов, если поиск идет по живому индексу. Выдача по снимку
+     * не меняется до его замены, и кеш в этом случае сбрасывается при замене.
+     */
+    public void invalidateLiveResults() {
+        if (snapshot.get() == null) {
+            resultCache.invalidate();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        scheduleRebuild(0);
+    }
+
+    /**
+     * Ставит сборку снимка в очередь. Запросы до начала отложенной сборки приводят к одной сборке.
+     */
+    public void requestRebuild() {
+        scheduleRebuild(settings.getSnapshotRebuildDelayMs());
+    }
+
+    private void scheduleRebuild(long delayMs) {
+        if (!settings.isSearchSnapshot() || !rebuildPending.compareAndSet(false, true)) {
+            return;
+        }
+        builder.schedule(() -> {
+            rebuildPending.set(false);
+            rebuild();
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            SearchSnapshot next = build();
+            snapshot.set(next);
+            resultCache.invalidate();
+            log.info("Снимок индекса для поиска собран за {} мс: {} страниц",
+                    System.currentTimeMillis() - start, next.getPageCount());
+        } catch (Exception e) {
+            log.error("Ошибка при сборке снимка индекса, поиск продолжает работать по предыдущему", e);
+        }
+    }
+
+    private SearchSnapshot build() {
+        SearchSnapshot.Builder snapshotBuilder = new SearchSnapshot.Builder(liveSource);
+        List<Site> sites = siteRepository.findAll();
+        // Число страниц и слов для BM25 берется из тех же счетчиков, что и у живого индекса,
+        // иначе один и тот же запрос ранжировался бы по-разному в зависимости от режима поиска
+        sites.forEach(site -> snapshotBuilder.addSite(site, siteCounters.getPages(site), siteCounters.getWords(site)));
+        // Тексты и позиции слов не копируются: снимок читает их из базы только для страниц выдачи
+        jdbcTemplate.query("SELECT id, word_count FROM page WHERE duplicate_of IS NULL",
+                (RowCallbackHandler) rs -> snapshotBuilder.addPage(rs.getInt("id"), rs.getInt("word_count")));
+        for (Site site : sites) {
+            indexStore.scan(site, (lemma, pageId, rank) -> snapshotBuilder.addPosting(site, lemma, pageId, rank));
+        }
+        return snapshotBuilder.build();
+    }
+}
@@ -0,0 +1,81 @@
+package searchengine.services.search;
+
+import searchengine.model.Page;
+import searchengine.model.Site;
+import searchengine.services.storage.Bm25;
+import searchengine.services.storage.PostingList;
+import searchengine.services.storage.RankedPages;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Данные, по которым выполняется поиск: живой индекс или его снимок в памяти.
+ */
+public interface SearchSource {
+
+    /**
+     * @return сайт с указанным адресом, а если адрес не задан или не найден - все сайты
+     */
+    List<Site> findSites(String siteUrl);
+
+    /**
+     * @return число лемм в словаре сайта
+     */
+    int getLemmaCount(Site site);
+
+    /**
+     * @return число страниц сайта, на которых встречается лемма
+     */
+    int getFrequency(Site site, String lemma);
+
+    /**
+     * @return число страниц сайта
+     */
+    int getPageCount(Site site);
+
+    /**
+     * @return среднее число слов на странице сайта, не меньше 1
+     */
+    double getAverageLength(Site site);
+
+    /**
+     * @return число слов страниц сайта по их идентификаторам, отсутствующие пропускаются
+     */
+    Map<Integer, Integer> getPageLengths(Site site, int[] pageIds);
+
+    /**
+     * @return позиции слов страниц сайта в формате {@link LemmaOffsets} по их идентификаторам,
+     * страницы без сохраненных позиций пропускаются
+     */
+    Map<Integer, byte[]> getLemmaOffsets(Site site, int[] pageIds);
+
+    /**
+     * @return ранг леммы по идентификаторам страниц сайта
+     */
+    Map<Integer, Float> getPostings(Site site, String lemma);
+
+    /**
+     * @return страницы сайта с леммой по возрастанию id
+     */
+    default PostingList getPostingList(Site site, String lemma) {
+        return PostingList.of(getPostings(site, lemma));
+    }
+
+    /**
+     * @param lemmas леммы запроса от самой редкой к самой частой
+     * @param positional условия на расположение слов, которым должны удовлетворять страницы
+     * @return limit страниц сайтов с наибольшей оценкой BM25 среди тех, на которых есть все леммы
+     */
+    default RankedPages rankPages(List<Site> sites, List<String> lemmas, PositionalQuery positional, Bm25 bm25,
+                                  int limit) {
+        return Bm25Ranker.rank(this, sites, lemmas, positional, bm25, limit);
+    }
+
+    /**
+     * @param sites сайты, среди страниц которых нужно искать
+     * @return страницы по их идентификаторам, отсутствующие пропускаются
+     */
+    Map<Integer, Page> findPages(List<Site> sites, Collection<Integer> pageIds);
+}
@@ -0,0 +1,150 @@
+package searchengine.services.search;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Строит сниппет по готовым позициям слов запроса в тексте страницы.
+ * <p>
+ * Окно текста выбирается скользящим окном по вхождениям: в нем больше всего разных лемм запроса,
+ * а при равенстве - больше всего вхождений. Выделение идет одним проходом по вхождениям внутри окна
+ * в один {@link StringBuilder}, поэтому текст не просматривается повторно для каждого слова.
+ */
+public final class SnippetBuilder {
+    private static final int SNIPPET_LENGTH = 200;
+
+    private SnippetBuilder() {
+    }
+
+    /**
+     * @param titleOffsets тройки (номер слова, начало, конец) слов запроса в заголовке по леммам
+     * @param textOffsets тройки (номер слова, начало, конец) слов запроса в тексте по леммам
+     */
+    public static String build(String title, Map<String, int[]> titleOffsets, String text, Map<String, int[]> textOffsets) {
+        StringBuilder snippet = new StringBuilder();
+        if (title != null && !titleOffsets.isEmpty()) {
+            Occurrences occurrences = Occurrences.of(titleOffsets.values());
+            snippet.append("<b>Заголовок:</b> ");
+            occurrences.highlight(snippet, title, 0, title.length());
+        }
+        if (text != null && !textOffsets.isEmpty()) {
+            if (!snippet.isEmpty()) {
+                snippet.append("<br><br>");
+            }
+            appendFragment(snippet, text, Occurrences.of(textOffsets.values()));
+        }
+        return !snippet.isEmpty() ? snippet.append("...").toString() : "";
+    }
+
+    private static void appendFragment(StringBuilder snippet, String text, Occurrences occurrences) {
+        int[] best = occurrences.densestWindow(SNIPPET_LENGTH);
+        int first = occurrences.starts[best[0]];
+        int last = occurrences.ends[best[1]];
+        int start = Math.max(first - (SNIPPET_LENGTH - (last - first)) / 2, 0);
+        int end = Math.min(start + SNIPPET_LENGTH, text.length());
+        start = Math.max(Math.min(start, end - SNIPPET_LENGTH), 0);
+        // Окно не должно начинаться или заканчиваться посередине слова
+        while (start > 0 && start < first && !Character.isWhitespace(text.charAt(start - 1))) {
+            start++;
+        }
+        while (end < text.length() && end > last && !Character.isWhitespace(text.charAt(end))) {
+            end--;
+        }
+        occurrences.highlight(snippet, text, start, end);
+    }
+
+    /**
+     * Все вхождения слов запроса по возрастанию начала с номером леммы каждого.
+     */
+    private static final class Occurrences {
+        private final int[] starts;
+        private final int[] ends;
+        private final int[] lemmas;
+        private final int lemmaCount;
+
+        private Occurrences(int[] starts, int[] ends, int[] lemmas, int lemmaCount) {
+            this.starts = starts;
+            this.ends = ends;
+            this.lemmas = lemmas;
+            this.lemmaCount = lemmaCount;
+        }
+
+        static Occurrences of(Collection<int[]> offsets) {
+            int size = offsets.stream().mapToInt(triples -> triples.length / 3).sum();
+            // Начало в старших 32 битах, номер вхождения в младших: сортировка упорядочивает по началу
+            long[] packed = new long[size];
+            int[] starts = new int[size];
+            int[] ends = new int[size];
+            int[] lemmas = new int[size];
+            int count = 0;
+            int lemma = 0;
+            for (int[] triples : offsets) {
+                for (int i = 0; i < triples.length; i += 3) {
+                    starts[count] = triples[i + 1];
+                    ends[count] = triples[i + 2];
+                    lemmas[count] = lemma;
+                    packed[count] = ((long) triples[i + 1] << 32) | count;
+                    count++;
+                }
+                lemma++;
+            }
+            Arrays.sort(packed);
+            int[] sortedStarts = new int[size];
+            int[] sortedEnds = new int[size];
+            int[] sortedLemmas = new int[size];
+            for (int i = 0; i < size; i++) {
+                int index = (int) packed[i];
+                sortedStarts[i] = starts[index];
+                sortedEnds[i] = ends[index];
+                sortedLemmas[i] = lemmas[index];
+            }
+            return new Occurrences(sortedStarts, sortedEnds, sortedLemmas, lemma);
+        }
+
+        /**
+         * @return номера первого и последнего вхождения лучшего окна не длиннее length
+         */
+        int[] densestWindow(int length) {
+            int[] inWindow = new int[lemmaCount];
+            int distinct = 0;
+            int[] best = {0, 0};
+            int bestDistinct = 0;
+            int bestCount = 0;
+            int left = 0;
+            for (int right = 0; right < starts.length; right++) {
+                if (inWindow[lemmas[right]]++ == 0) {
+                    distinct++;
+                }
+                while (left < right && ends[right] - starts[left] > length) {
+                    if (--inWindow[lemmas[left++]] == 0) {
+                        distinct--;
+                    }
+                }
+                int count = right - left + 1;
+                if (distinct > bestDistinct || (distinct == bestDistinct && count > bestCount)) {
+                    bestDistinct = distinct;
+                    bestCount = count;
+                    best[0] = left;
+                    best[1] = right;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Добавляет текст от from до to, выделяя вхождения, которые целиком лежат внутри.
+         */
+        void highlight(StringBuilder out, String text, int from, int to) {
+            int position = from;
+            for (int i = 0; i < starts.length && starts[i] < to; i++) {
+                if (starts[i] < position || ends[i] > to) {
+                    continue;
+                }
+                out.append(text, position, starts[i]).append("<b>").append(text, starts[i], ends[i]).append("</b>");
+                position = ends[i];
+            }
+            out.append(text, position, to);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package searchengine.services.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+/**
+ * Формула ранжирования BM25.
+ * <p>
+ * Вклад леммы в релевантность страницы - idf * tf * (k1 + 1) / (tf + k1 * (1 - b + b * length / averageLength)),
+ * где tf - число вхождений леммы на странице, length - число слов страницы,
+ * averageLength - среднее число слов страниц сайта, idf = ln(1 + (N - df + 0.5) / (df + 0.5)),
+ * N - число страниц сайта, df - число страниц с леммой.
+ */
+@Component
+@RequiredArgsConstructor
+public class Bm25 {
+    private final SearchSettings settings;
+
+    public double getK1() {
+        return settings.getBm25K1();
+    }
+
+    public double getB() {
+        return settings.getBm25B();
+    }
+
+    public double idf(int pageCount, int frequency) {
+        return Math.log(1 + (Math.max(pageCount - frequency, 0) + 0.5) / (frequency + 0.5));
+    }
+
+    public double score(float tf, int length, double averageLength, double idf) {
+        double k1 = getK1();
+        double b = getB();
+        return idf * tf * (k1 + 1) / (tf + k1 * (1 - b + b * length / averageLength));
+    }
+
+    /**
+     * @return наибольший возможный вклад леммы при таком tf - на странице нулевой длины
+     */
+    public double upperBound(float tf, double idf) {
+        double k1 = getK1();
+        return idf * tf * (k1 + 1) / (tf + k1 * (1 - getB()));
+    }
+}
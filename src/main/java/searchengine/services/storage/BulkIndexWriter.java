@@ -0,0 +1,141 @@
+package searchengine.services.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import searchengine.config.CrawlerSettings;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пакетная запись в таблицу index в обход JPA.
+ * <p>
+ * Из-за GenerationType.IDENTITY Hibernate не умеет группировать вставки, поэтому строки индекса
+ * копятся в буфере и уходят в базу многострочными INSERT: когда буфер достигает
+ * index-write-batch-size строк или по таймеру раз в index-flush-interval-ms.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BulkIndexWriter {
+    /** PostgreSQL ограничивает число параметров одного запроса 32767. */
+    private static final int MAX_ROWS_PER_STATEMENT = 8_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CrawlerSettings crawlerSettings;
+
+    private final Object bufferLock = new Object();
+    private List<IndexRow> buffer = new ArrayList<>();
+    private ScheduledExecutorService flushTimer;
+
+    @PostConstruct
+    void startFlushTimer() {
+        long interval = crawlerSettings.getIndexFlushIntervalMs();
+        flushTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "index-writer-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushTimer.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopFlushTimer() {
+        flushTimer.shutdownNow();
+        flushQuietly();
+    }
+
+    /**
+     * Добавляет в буфер строки индекса одной страницы.
+     * Если буфер заполнен, он записывается в базу в вызывающем потоке.
+     * Внутри транзакции строки сразу пишутся в ней: страница и леммы еще не видны другим соединениям,
+     * и запись по таймеру нарушила бы внешние ключи.
+     */
+    public void add(int siteId, int pageId, Map<Integer, Float> ranksByLemmaId) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            List<IndexRow> rows = new ArrayList<>();
+            ranksByLemmaId.forEach((lemmaId, rank) -> rows.add(new IndexRow(siteId, pageId, lemmaId, rank)));
+            writeIndexRows(rows);
+            return;
+        }
+        List<IndexRow> ready = null;
+        synchronized (bufferLock) {
+            ranksByLemmaId.forEach((lemmaId, rank) -> buffer.add(new IndexRow(siteId, pageId, lemmaId, rank)));
+            if (buffer.size() >= crawlerSettings.getIndexWriteBatchSize()) {
+                ready = swapBuffer();
+            }
+        }
+        if (ready != null) {
+            writeIndexRows(ready);
+        }
+    }
+
+    /**
+     * Записывает в базу все накопленные строки индекса.
+     */
+    public void flush() {
+        List<IndexRow> ready;
+        synchronized (bufferLock) {
+            ready = swapBuffer();
+        }
+        writeIndexRows(ready);
+    }
+
+    /**
+     * Сбрасывает буфер без записи, например перед полной очисткой базы.
+     */
+    public void discard() {
+        synchronized (bufferLock) {
+            buffer = new ArrayList<>();
+        }
+    }
+
+    private List<IndexRow> swapBuffer() {
+        List<IndexRow> ready = buffer;
+        buffer = new ArrayList<>();
+        return ready;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Ошибка при пакетной записи индекса", e);
+        }
+    }
+
+    private void writeIndexRows(List<IndexRow> rows) {
+        for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<IndexRow> chunk = rows.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, rows.size()));
+            String sql = "INSERT INTO \"index\" (site_id, page_id, lemma_id, \"rank\") VALUES "
+                    + String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?, ?)"));
+            Object[] args = new Object[chunk.size() * 4];
+            for (int i = 0; i < chunk.size(); i++) {
+                IndexRow row = chunk.get(i);
+                args[i * 4] = row.siteId;
+                args[i * 4 + 1] = row.pageId;
+                args[i * 4 + 2] = row.lemmaId;
+                args[i * 4 + 3] = row.rank;
+            }
+            jdbcTemplate.update(sql, args);
+        }
+        if (!rows.isEmpty()) {
+            log.debug("Записано {} строк индекса", rows.size());
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class IndexRow {
+        private final int siteId;
+        private final int pageId;
+        private final int lemmaId;
+        private final float rank;
+    }
+}
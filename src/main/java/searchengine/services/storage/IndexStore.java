@@ -0,0 +1,78 @@
+package searchengine.services.storage;
+
+import searchengine.model.Site;
+
+import java.util.Map;
+
+/**
+ * Хранилище лемм и обратного индекса.
+ * <p>
+ * Страницы и сайты всегда лежат в PostgreSQL, а словарь лемм и списки страниц по каждой лемме
+ * хранит реализация, выбранная параметром index-store.type.
+ */
+public interface IndexStore {
+
+    /**
+     * Добавляет в индекс новую страницу сайта.
+     *
+     * @param lemmas количество вхождений каждой леммы на странице
+     */
+    void addPage(Site site, int pageId, Map<String, Integer> lemmas);
+
+    /**
+     * Заменяет набор лемм уже проиндексированной страницы.
+     */
+    void updatePage(Site site, int pageId, Map<String, Integer> lemmas);
+
+    /**
+     * Удаляет страницу из индекса.
+     */
+    void removePage(Site site, int pageId);
+
+    /**
+     * @return число страниц сайта, на которых встречается лемма
+     */
+    int getFrequency(Site site, String lemma);
+
+    /**
+     * @return ранг леммы по идентификаторам страниц сайта
+     */
+    Map<Integer, Float> getPostings(Site site, String lemma);
+
+    /**
+     * @return страницы сайта с леммой по возрастанию id
+     */
+    default PostingList getPostingList(Site site, String lemma) {
+        return PostingList.of(getPostings(site, lemma));
+    }
+
+    /**
+     * Передает в visitor все записи индекса сайта в произвольном порядке.
+     */
+    void scan(Site site, PostingVisitor visitor);
+
+    /**
+     * Записывает накопленные изменения всех сайтов.
+     */
+    void flush();
+
+    /**
+     * Записывает изменения сайта после окончания его обхода и освобождает буферы.
+     */
+    void complete(Site site);
+
+    /**
+     * Удаляет индекс сайта перед его полной переиндексацией.
+     */
+    void resetSite(Site site);
+
+    /**
+     * Удаляет индекс всех сайтов.
+     */
+    void resetAll();
+
+    @FunctionalInterface
+    interface PostingVisitor {
+        void accept(String lemma, int pageId, float rank);
+    }
+}
@@ -0,0 +1,272 @@
+package searchengine.services.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import searchengine.model.Site;
+import searchengine.repositories.IndexRepository;
+
+import javax.annotation.PostConstruct;
+import java.sql.PreparedStatement;
+import java.util.*;
+
+/**
+ * Хранилище индекса в таблицах lemma и index PostgreSQL.
+ * Запись идет через {@link LemmaAccumulator}, {@link BulkIndexWriter} и JdbcTemplate, чтение - через репозитории.
+ * Частоты лемм для поиска берутся из {@link LemmaDictionary} в памяти.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "index-store", name = "type", havingValue = "jdbc", matchIfMissing = true)
+public class JdbcIndexStore implements RankingIndexStore {
+    /**
+     * Оценка BM25 страниц по всем леммам запроса одним запросом: страница попадает в результат,
+     * только если у нее есть строка индекса для каждой леммы. idf лемм и средняя длина страниц сайта
+     * передаются массивами, длина страницы берется из page.word_count. Общее число страниц
+     * и наибольшая релевантность считаются оконными функциями по всему результату до LIMIT.
+     */
+    private static final String RANK_PAGES_SQL = "WITH q AS (SELECT * FROM unnest(?::int[], ?::text[], ?::float8[], ?::float8[])"
+            + " AS q(site_id, lemma, idf, average_length))"
+            + " SELECT page_id, relevance, COUNT(*) OVER () AS total, MAX(relevance) OVER () AS max_relevance FROM ("
+            + " SELECT i.page_id, SUM(q.idf * i.\"rank\" * (? + 1)"
+            + " / (i.\"rank\" + ? * (1 - ? + ? * p.word_count / q.average_length))) AS relevance"
+            + " FROM q JOIN lemma l ON l.site_id = q.site_id AND l.lemma = q.lemma"
+            + " JOIN \"index\" i ON i.lemma_id = l.id AND i.site_id = l.site_id"
+            + " JOIN page p ON p.id = i.page_id AND p.site_id = i.site_id"
+            + " GROUP BY i.page_id HAVING COUNT(*) = ?) r"
+            + " ORDER BY relevance DESC, page_id LIMIT ?";
+
+    private final IndexRepository indexRepository;
+    private final LemmaAccumulator lemmaAccumulator;
+    private final BulkIndexWriter indexWriter;
+    private final JdbcTemplate jdbcTemplate;
+    private final SiteCounters siteCounters;
+
+    private final LemmaDictionary dictionary = new LemmaDictionary();
+
+    @PostConstruct
+    void loadDictionary() {
+        jdbcTemplate.query("SELECT site_id, lemma, frequency FROM lemma WHERE frequency > 0",
+                (RowCallbackHandler) rs -> dictionary.add(rs.getInt(1), rs.getString(2), rs.getInt(3)));
+        log.info("Словарь лемм загружен в память: {} лемм", dictionary.size());
+    }
+
+    @Override
+    public void addPage(Site site, int pageId, Map<String, Integer> lemmas) {
+        // Частоты лемм копятся в памяти, идентификаторы нужны сразу для строк индекса
+        Map<String, Integer> lemmaIds = lemmaAccumulator.register(site, lemmas.keySet());
+        Map<Integer, Float> ranksByLemmaId = new HashMap<>();
+        lemmas.forEach((lemmaText, count) -> ranksByLemmaId.put(lemmaIds.get(lemmaText), (float) count));
+        indexWriter.add(site.getId(), pageId, ranksByLemmaId);
+        changeFrequencies(site, lemmas.keySet(), 1);
+    }
+
+    /**
+     * Применяет к индексу только разницу между старым и новым набором лемм страницы:
+     * удаление и изменение рангов идут set-based запросами, новые строки - через {@link BulkIndexWriter}.
+     */
+    @Override
+    public void updatePage(Site site, int pageId, Map<String, Integer> lemmas) {
+        // Строки страницы могут еще лежать в буфере, без записи разница считалась бы не от них
+        indexWriter.flush();
+        Map<String, Integer> oldLemmaIds = new HashMap<>();
+        Map<String, Float> oldRanks = new HashMap<>();
+        jdbcTemplate.query("SELECT l.lemma, i.lemma_id, i.\"rank\" FROM \"index\" i"
+                        + " JOIN lemma l ON l.id = i.lemma_id AND l.site_id = i.site_id"
+                        + " WHERE i.page_id = ? AND i.site_id = ?",
+                (RowCallbackHandler) rs -> {
+                    oldLemmaIds.put(rs.getString(1), rs.getInt(2));
+                    oldRanks.put(rs.getString(1), rs.getFloat(3));
+                }, pageId, site.getId());
+
+        Map<String, Integer> addedLemmas = new HashMap<>();
+        List<Object[]> changedRanks = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : lemmas.entrySet()) {
+            Integer lemmaId = oldLemmaIds.remove(entry.getKey());
+            if (lemmaId == null) {
+                addedLemmas.put(entry.getKey(), entry.getValue());
+            } else if (oldRanks.get(entry.getKey()) != entry.getValue().floatValue()) {
+                changedRanks.add(new Object[]{entry.getValue().floatValue(), pageId, site.getId(), lemmaId});
+            }
+        }
+
+        if (!oldLemmaIds.isEmpty()) {
+            Integer[] removedIds = oldLemmaIds.values().toArray(new Integer[0]);
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                        "DELETE FROM \"index\" WHERE page_id = ? AND site_id = ? AND lemma_id = ANY (?)");
+                statement.setInt(1, pageId);
+                statement.setInt(2, site.getId());
+                statement.setArray(3, connection.createArrayOf("integer", removedIds));
+                return statement;
+            });
+            release(site, oldLemmaIds.keySet());
+        }
+        if (!changedRanks.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE \"index\" SET \"rank\" = ? WHERE page_id = ? AND site_id = ? AND lemma_id = ?",
+                    changedRanks);
+        }
+        addPage(site, pageId, addedLemmas);
+        log.debug("Индекс страницы id={} обновлен: добавлено {}, изменено {}, удалено {} лемм", pageId,
+                addedLemmas.size(), changedRanks.size(), oldLemmaIds.size());
+    }
+
+    @Override
+    public void removePage(Site site, int pageId) {
+        indexWriter.flush();
+        List<String> lemmas = jdbcTemplate.queryForList("DELETE FROM \"index\" i USING lemma l"
+                + " WHERE i.page_id = ? AND i.site_id = ? AND l.id = i.lemma_id AND l.site_id = i.site_id"
+                + " RETURNING l.lemma", String.class, pageId, site.getId());
+        release(site, lemmas);
+    }
+
+    private void release(Site site, Collection<String> lemmas) {
+        lemmaAccumulator.release(site, lemmas);
+        changeFrequencies(site, lemmas, -1);
+    }
+
+    /**
+     * Число лемм сайта считается по словарю: в него входят только леммы с ненулевой частотой,
+     * как и в снимке для поиска, где у каждой леммы есть хотя бы одна страница.
+     */
+    private void changeFrequencies(Site site, Collection<String> lemmas, int delta) {
+        applyFrequencies(site, lemmas, delta);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<String> changed = List.copyOf(lemmas);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        applyFrequencies(site, changed, -delta);
+                    }
+                }
+            });
+        }
+    }
+
+    private void applyFrequencies(Site site, Collection<String> lemmas, int delta) {
+        int lemmaCountDelta = 0;
+        for (String lemma : lemmas) {
+            lemmaCountDelta += dictionary.add(site.getId(), lemma, delta);
+        }
+        if (lemmaCountDelta != 0) {
+            siteCounters.addLemmas(site, lemmaCountDelta);
+        }
+    }
+
+    @Override
+    public int getFrequency(Site site, String lemma) {
+        return dictionary.getFrequency(site.getId(), lemma);
+    }
+
+    @Override
+    public Map<Integer, Float> getPostings(Site site, String lemma) {
+        Map<Integer, Float> postings = new HashMap<>();
+        for (Object[] row : indexRepository.findPostings(site, lemma)) {
+            postings.put((Integer) row[0], (Float) row[1]);
+        }
+        return postings;
+    }
+
+    @Override
+    public RankedPages rankPages(List<Site> sites, List<String> lemmas, Bm25 bm25, int limit) {
+        List<String> distinctLemmas = new ArrayList<>(new LinkedHashSet<>(lemmas));
+        if (sites.isEmpty() || distinctLemmas.isEmpty()) {
+            return RankedPages.EMPTY;
+        }
+        List<Object> siteIds = new ArrayList<>();
+        List<Object> queryLemmas = new ArrayList<>();
+        List<Object> idf = new ArrayList<>();
+        List<Object> averageLengths = new ArrayList<>();
+        for (Site site : sites) {
+            int pageCount = siteCounters.getPages(site);
+            double averageLength = Math.max((double) siteCounters.getWords(site) / Math.max(pageCount, 1), 1);
+            for (String lemma : distinctLemmas) {
+                siteIds.add(site.getId());
+                queryLemmas.add(lemma);
+                idf.add(bm25.idf(pageCount, dictionary.getFrequency(site.getId(), lemma)));
+                averageLengths.add(averageLength);
+            }
+        }
+        List<Integer> pageIds = new ArrayList<>();
+        List<Double> relevance = new ArrayList<>();
+        int[] total = {0};
+        double[] maxRelevance = {0};
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(RANK_PAGES_SQL);
+            statement.setArray(1, connection.createArrayOf("integer", siteIds.toArray()));
+            statement.setArray(2, connection.createArrayOf("text", queryLemmas.toArray()));
+            statement.setArray(3, connection.createArrayOf("float8", idf.toArray()));
+            statement.setArray(4, connection.createArrayOf("float8", averageLengths.toArray()));
+            statement.setDouble(5, bm25.getK1());
+            statement.setDouble(6, bm25.getK1());
+            statement.setDouble(7, bm25.getB());
+            statement.setDouble(8, bm25.getB());
+            statement.setInt(9, distinctLemmas.size());
+            // Хотя бы одна строка нужна, чтобы узнать общее число страниц
+            statement.setInt(10, Math.max(limit, 1));
+            return statement;
+        }, (RowCallbackHandler) rs -> {
+            total[0] = rs.getInt("total");
+            maxRelevance[0] = rs.getDouble("max_relevance");
+            if (pageIds.size() < limit) {
+                pageIds.add(rs.getInt("page_id"));
+                relevance.add(rs.getDouble("relevance"));
+            }
+        });
+        return new RankedPages(total[0], maxRelevance[0], pageIds.stream().mapToInt(Integer::intValue).toArray(),
+                relevance.stream().mapToDouble(Double::doubleValue).toArray());
+    }
+
+    /**
+     * Читает индекс сайта курсором, не загружая все строки в память сразу.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void scan(Site site, PostingVisitor visitor) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    "SELECT l.lemma, i.page_id, i.\"rank\" FROM \"index\" i JOIN lemma l ON l.id = i.lemma_id"
+                            + " WHERE i.site_id = ? AND l.site_id = ?");
+            statement.setFetchSize(10_000);
+            statement.setInt(1, site.getId());
+            statement.setInt(2, site.getId());
+            return statement;
+        }, (RowCallbackHandler) rs -> visitor.accept(rs.getString(1), rs.getInt(2), rs.getFloat(3)));
+    }
+
+    @Override
+    public void flush() {
+        indexWriter.flush();
+        lemmaAccumulator.flush();
+    }
+
+    @Override
+    public void complete(Site site) {
+        indexWriter.flush();
+        lemmaAccumulator.complete(site);
+    }
+
+    /**
+     * Сами строки удаляются вместе с секциями сайта, здесь сбрасываются только буферы.
+     */
+    @Override
+    public void resetSite(Site site) {
+        lemmaAccumulator.discard(site);
+        dictionary.clear(site.getId());
+    }
+
+    @Override
+    public void resetAll() {
+        indexWriter.discard();
+        lemmaAccumulator.discard();
+        dictionary.clear();
+    }
+}
@@ -0,0 +1,234 @@
+package searchengine.services.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.CrawlerSettings;
+import searchengine.model.Site;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Счетчики частот лемм, отдельные для каждого сайта.
+ * <p>
+ * Потоки обхода меняют частоты в памяти без общей блокировки, а в таблицу lemma изменения
+ * уходят пачками через INSERT ... ON CONFLICT (site_id, lemma) DO UPDATE: по таймеру раз
+ * в lemma-flush-interval-ms и при завершении обхода сайта. Идентификаторы лемм,
+ * нужные для строк индекса, получаются тем же upsert при первой встрече леммы.
+ * <p>
+ * Upsert выполняется в собственной транзакции: идентификаторы запоминаются в памяти и должны
+ * остаться верными, даже если транзакция вызывающего кода откатится. Изменения частот,
+ * учтенные в откатившейся транзакции, при этом отменяются.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LemmaAccumulator {
+    private static final int MAX_ROWS_PER_STATEMENT = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CrawlerSettings crawlerSettings;
+    private final PlatformTransactionManager transactionManager;
+
+    private final Map<Integer, SiteLemmas> sites = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flushTimer;
+    private TransactionTemplate separateTransaction;
+
+    @PostConstruct
+    void startFlushTimer() {
+        separateTransaction = new TransactionTemplate(transactionManager);
+        separateTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        long interval = crawlerSettings.getLemmaFlushIntervalMs();
+        flushTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lemma-accumulator-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushTimer.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopFlushTimer() {
+        flushTimer.shutdownNow();
+        flushQuietly();
+    }
+
+    /**
+     * Учитывает появление лемм на новой странице сайта: частота каждой растет на единицу.
+     *
+     * @return идентификаторы лемм по их тексту
+     */
+    public Map<String, Integer> register(Site site, Collection<String> lemmas) {
+        SiteLemmas siteLemmas = sites.computeIfAbsent(site.getId(), SiteLemmas::new);
+        Map<String, Integer> ids = siteLemmas.resolveIds(lemmas);
+        lemmas.forEach(lemma -> siteLemmas.counter(lemma).incrementAndGet());
+        revertOnRollback(site, lemmas, -1);
+        return ids;
+    }
+
+    /**
+     * Учитывает исчезновение лемм со страницы сайта: частота каждой уменьшается на единицу.
+     */
+    public void release(Site site, Collection<String> lemmas) {
+        SiteLemmas siteLemmas = sites.computeIfAbsent(site.getId(), SiteLemmas::new);
+        lemmas.forEach(lemma -> siteLemmas.counter(lemma).decrementAndGet());
+        revertOnRollback(site, lemmas, 1);
+    }
+
+    private void revertOnRollback(Site site, Collection<String> lemmas, int delta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        List<String> changed = List.copyOf(lemmas);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    SiteLemmas siteLemmas = sites.computeIfAbsent(site.getId(), SiteLemmas::new);
+                    changed.forEach(lemma -> siteLemmas.counter(lemma).addAndGet(delta));
+                }
+            }
+        });
+    }
+
+    /**
+     * Записывает накопленные изменения частот всех сайтов.
+     */
+    public void flush() {
+        sites.values().forEach(SiteLemmas::flush);
+    }
+
+    /**
+     * Записывает изменения частот сайта и освобождает занятую им память.
+     */
+    public void complete(Site site) {
+        SiteLemmas siteLemmas = sites.remove(site.getId());
+        if (siteLemmas != null) {
+            siteLemmas.flush();
+        }
+    }
+
+    /**
+     * Забывает накопленные изменения сайта без записи, например после очистки его секций.
+     */
+    public void discard(Site site) {
+        sites.remove(site.getId());
+    }
+
+    /**
+     * Забывает все накопленные изменения без записи, например перед полной очисткой базы.
+     */
+    public void discard() {
+        sites.clear();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Ошибка при записи частот лемм", e);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private class SiteLemmas {
+        private final int siteId;
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> deltas = new ConcurrentHashMap<>();
+
+        AtomicInteger counter(String lemma) {
+            return deltas.computeIfAbsent(lemma, key -> new AtomicInteger());
+        }
+
+        Map<String, Integer> resolveIds(Collection<String> lemmas) {
+            Map<String, Integer> result = new HashMap<>();
+            List<String> unknown = new ArrayList<>();
+            for (String lemma : lemmas) {
+                Integer id = ids.get(lemma);
+                if (id != null) {
+                    result.put(lemma, id);
+                } else {
+                    unknown.add(lemma);
+                }
+            }
+            if (!unknown.isEmpty()) {
+                Collections.sort(unknown);
+                Map<String, Integer> resolved = new HashMap<>();
+                upsert(unknown, Collections.nCopies(unknown.size(), 0), resolved);
+                ids.putAll(resolved);
+                result.putAll(resolved);
+            }
+            return result;
+        }
+
+        void flush() {
+            SortedMap<String, Integer> pending = new TreeMap<>();
+            deltas.forEach((lemma, counter) -> {
+                int delta = counter.getAndSet(0);
+                if (delta != 0) {
+                    pending.put(lemma, delta);
+                }
+            });
+            List<String> lemmas = new ArrayList<>(pending.keySet());
+            List<Integer> changes = new ArrayList<>(pending.values());
+            if (lemmas.isEmpty()) {
+                return;
+            }
+            try {
+                upsert(lemmas, changes, null);
+            } catch (RuntimeException e) {
+                for (int i = 0; i < lemmas.size(); i++) {
+                    counter(lemmas.get(i)).addAndGet(changes.get(i));
+                }
+                throw e;
+            }
+            log.debug("Записаны частоты {} лемм сайта id={}", lemmas.size(), siteId);
+        }
+
+        /**
+         * Прибавляет к частотам лемм сайта переданные значения, создавая недостающие строки.
+         * Если передан ids, в него складываются идентификаторы затронутых лемм.
+         * Леммы должны идти по алфавиту, чтобы параллельные upsert блокировали строки
+         * в одном порядке и не взаимоблокировались.
+         */
+        private void upsert(List<String> lemmas, List<Integer> changes, Map<String, Integer> ids) {
+            separateTransaction.executeWithoutResult(status -> upsertRows(lemmas, changes, ids));
+        }
+
+        private void upsertRows(List<String> lemmas, List<Integer> changes, Map<String, Integer> ids) {
+            for (int from = 0; from < lemmas.size(); from += MAX_ROWS_PER_STATEMENT) {
+                int to = Math.min(from + MAX_ROWS_PER_STATEMENT, lemmas.size());
+                String sql = "INSERT INTO lemma (site_id, lemma, frequency) VALUES "
+                        + String.join(", ", Collections.nCopies(to - from, "(?, ?, ?)"))
+                        + " ON CONFLICT (site_id, lemma) DO UPDATE"
+                        + " SET frequency = GREATEST(lemma.frequency + EXCLUDED.frequency, 0)"
+                        + " RETURNING id, lemma";
+                Object[] args = new Object[(to - from) * 3];
+                for (int i = from; i < to; i++) {
+                    args[(i - from) * 3] = siteId;
+                    args[(i - from) * 3 + 1] = lemmas.get(i);
+                    args[(i - from) * 3 + 2] = changes.get(i);
+                }
+                jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+                    if (ids != null) {
+                        ids.put(rs.getString("lemma"), rs.getInt("id"));
+                    }
+                }, args);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package searchengine.services.storage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Словарь лемм каждого сайта, постоянно находящийся в памяти: лемма и число страниц сайта с ней.
+ * <p>
+ * Заполняется из таблицы lemma при запуске и дальше меняется индексатором вместе с индексом,
+ * поэтому частоты в нем не отстают от таблицы, в которую изменения пишутся пачками.
+ * Проверка лемм запроса сводится к поиску в хеш-таблице.
+ */
+class LemmaDictionary {
+    private final Map<Integer, Map<String, AtomicInteger>> sites = new ConcurrentHashMap<>();
+
+    /**
+     * Меняет частоту леммы на delta, не опуская ее ниже нуля.
+     *
+     * @return 1, если лемма появилась на сайте, -1, если ее не осталось ни на одной странице, иначе 0
+     */
+    int add(int siteId, String lemma, int delta) {
+        int previous = sites.computeIfAbsent(siteId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(lemma, key -> new AtomicInteger())
+                .getAndUpdate(frequency -> Math.max(frequency + delta, 0));
+        int current = Math.max(previous + delta, 0);
+        if (previous == 0 && current > 0) {
+            return 1;
+        }
+        return previous > 0 && current == 0 ? -1 : 0;
+    }
+
+    int getFrequency(int siteId, String lemma) {
+        Map<String, AtomicInteger> lemmas = sites.get(siteId);
+        AtomicInteger frequency = lemmas != null ? lemmas.get(lemma) : null;
+        return frequency != null ? frequency.get() : 0;
+    }
+
+    void clear(int siteId) {
+        sites.remove(siteId);
+    }
+
+    void clear() {
+        sites.clear();
+    }
+
+    int size() {
+        return sites.values().stream().mapToInt(Map::size).sum();
+    }
+}
@@ -0,0 +1,75 @@
+package searchengine.services.storage;
+
+/**
+ * Страницы, на которых есть все уже пересеченные леммы, с рангом каждой леммы на них.
+ * <p>
+ * Начинается со списка самой редкой леммы, каждый следующий список только сужает набор:
+ * для каждой оставшейся страницы позиция в нем ищется галопом от предыдущей найденной,
+ * поэтому длинные списки частых лемм не просматриваются целиком.
+ */
+public class PostingIntersection {
+    private final int[] pageIds;
+    private final float[][] ranks;
+    private int lemmaCount;
+    private int size;
+
+    private PostingIntersection(PostingList list, int maxLemmas) {
+        size = list.size();
+        pageIds = new int[size];
+        ranks = new float[maxLemmas][];
+        ranks[0] = new float[size];
+        for (int i = 0; i < size; i++) {
+            pageIds[i] = list.pageId(i);
+            ranks[0][i] = list.rank(i);
+        }
+        lemmaCount = 1;
+    }
+
+    /**
+     * @param maxLemmas сколько всего списков будет пересечено
+     */
+    public static PostingIntersection of(PostingList list, int maxLemmas) {
+        return new PostingIntersection(list, maxLemmas);
+    }
+
+    /**
+     * Оставляет только страницы, которые есть в списке, и запоминает ранг его леммы на них.
+     */
+    public PostingIntersection retain(PostingList list) {
+        float[] lemmaRanks = new float[size];
+        int kept = 0;
+        int position = 0;
+        for (int i = 0; i < size && position < list.size(); i++) {
+            position = list.advance(position, pageIds[i]);
+            if (position < list.size() && list.pageId(position) == pageIds[i]) {
+                pageIds[kept] = pageIds[i];
+                for (int lemma = 0; lemma < lemmaCount; lemma++) {
+                    ranks[lemma][kept] = ranks[lemma][i];
+                }
+                lemmaRanks[kept++] = list.rank(position);
+            }
+        }
+        ranks[lemmaCount++] = lemmaRanks;
+        size = kept;
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int pageId(int index) {
+        return pageIds[index];
+    }
+
+    /**
+     * @return ранг леммы с номером lemma (в порядке пересечения) на странице с позицией index
+     */
+    public float rank(int index, int lemma) {
+        return ranks[lemma][index];
+    }
+}
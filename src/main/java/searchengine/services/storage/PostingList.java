@@ -0,0 +1,71 @@
+package searchengine.services.storage;
+
+import java.util.Map;
+
+/**
+ * Список страниц леммы: id страниц по возрастанию и ранги леммы на них в параллельном массиве.
+ * Массивы не копируются, поэтому изменять их после создания списка нельзя.
+ */
+public class PostingList {
+    public static final PostingList EMPTY = new PostingList(new int[0], new float[0]);
+
+    private final int[] pageIds;
+    private final float[] ranks;
+
+    public PostingList(int[] pageIds, float[] ranks) {
+        this.pageIds = pageIds;
+        this.ranks = ranks;
+    }
+
+    public static PostingList of(Map<Integer, Float> postings) {
+        if (postings.isEmpty()) {
+            return EMPTY;
+        }
+        int[] pageIds = postings.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        float[] ranks = new float[pageIds.length];
+        for (int i = 0; i < pageIds.length; i++) {
+            ranks[i] = postings.get(pageIds[i]);
+        }
+        return new PostingList(pageIds, ranks);
+    }
+
+    public int size() {
+        return pageIds.length;
+    }
+
+    public int pageId(int index) {
+        return pageIds[index];
+    }
+
+    public float rank(int index) {
+        return ranks[index];
+    }
+
+    /**
+     * Ищет первую позицию не раньше from, где id страницы не меньше pageId: шагами 1, 2, 4...
+     * до позиции за искомой, затем двоичным поиском в последнем шаге. Для возрастающих pageId
+     * и from с прошлого вызова проход по всему списку стоит O(k log(n / k)), где k - число поисков.
+     *
+     * @return найденная позиция или size(), если таких страниц нет
+     */
+    public int advance(int from, int pageId) {
+        int low = from;
+        int step = 1;
+        int high = from;
+        while (high < pageIds.length && pageIds[high] < pageId) {
+            low = high + 1;
+            high = from + step;
+            step <<= 1;
+        }
+        high = Math.min(high, pageIds.length);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (pageIds[middle] < pageId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,20 @@
+package searchengine.services.storage;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+
+/**
+ * Результат ранжирования: первые страницы, на которых есть все леммы запроса, по убыванию
+ * релевантности (оценки {@link Bm25}), общее число таких страниц и наибольшая релевантность.
+ */
+@Getter
+@RequiredArgsConstructor
+public class RankedPages {
+    public static final RankedPages EMPTY = new RankedPages(0, 0, new int[0], new double[0]);
+
+    private final int total;
+    private final double maxRelevance;
+    private final int[] pageIds;
+    private final double[] relevance;
+}
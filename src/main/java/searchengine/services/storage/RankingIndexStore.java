@@ -0,0 +1,18 @@
+package searchengine.services.storage;
+
+import searchengine.model.Site;
+
+import java.util.List;
+
+/**
+ * Хранилище индекса, которое ранжирует страницы само, не передавая списки страниц лемм в приложение.
+ */
+public interface RankingIndexStore extends IndexStore {
+
+    /**
+     * Находит страницы сайтов, на которых есть все леммы, и возвращает limit страниц с наибольшей оценкой BM25.
+     *
+     * @param lemmas леммы запроса от самой редкой к самой частой
+     */
+    RankedPages rankPages(List<Site> sites, List<String> lemmas, Bm25 bm25, int limit);
+}
@@ -0,0 +1,150 @@
+package searchengine.services.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+import searchengine.model.Site;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счетчики страниц, лемм и слов сайтов.
+ * <p>
+ * Индексатор меняет их по мере записи, а в колонки site.page_count, site.lemma_count и site.word_count
+ * значения сохраняются раз в statistics-flush-interval-ms, поэтому для статистики
+ * не нужно пересчитывать большие таблицы.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SiteCounters {
+    private final JdbcTemplate jdbcTemplate;
+    private final CrawlerSettings crawlerSettings;
+
+    private final Map<Integer, Counter> counters = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flushTimer;
+
+    @PostConstruct
+    void startFlushTimer() {
+        long interval = crawlerSettings.getStatisticsFlushIntervalMs();
+        flushTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "site-counters-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushTimer.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopFlushTimer() {
+        flushTimer.shutdownNow();
+        flushQuietly();
+    }
+
+    public void addPages(Site site, int delta) {
+        Counter counter = counter(site);
+        counter.pages.addAndGet(delta);
+        counter.dirty.set(true);
+    }
+
+    public void addLemmas(Site site, int delta) {
+        Counter counter = counter(site);
+        counter.lemmas.addAndGet(delta);
+        counter.dirty.set(true);
+    }
+
+    /**
+     * Заменяет число лемм сайта пересчитанным значением.
+     */
+    public void setLemmas(Site site, int lemmas) {
+        Counter counter = counter(site);
+        counter.lemmas.set(lemmas);
+        counter.dirty.set(true);
+    }
+
+    public void addWords(Site site, long delta) {
+        Counter counter = counter(site);
+        counter.words.addAndGet(delta);
+        counter.dirty.set(true);
+    }
+
+    public int getPages(Site site) {
+        Counter counter = counters.get(site.getId());
+        return counter != null ? counter.pages.get() : site.getPageCount();
+    }
+
+    public int getLemmas(Site site) {
+        Counter counter = counters.get(site.getId());
+        return counter != null ? counter.lemmas.get() : site.getLemmaCount();
+    }
+
+    public long getWords(Site site) {
+        Counter counter = counters.get(site.getId());
+        return counter != null ? counter.words.get() : site.getWordCount();
+    }
+
+    /**
+     * Обнуляет счетчики сайта после очистки его данных.
+     */
+    public void reset(Site site) {
+        Counter counter = new Counter(0, 0, 0);
+        counter.dirty.set(true);
+        counters.put(site.getId(), counter);
+    }
+
+    /**
+     * Забывает счетчики всех сайтов, например после полной очистки базы.
+     */
+    public void clear() {
+        counters.clear();
+    }
+
+    /**
+     * Сохраняет изменившиеся счетчики в таблицу site.
+     */
+    public void flush() {
+        counters.forEach((siteId, counter) -> {
+            if (counter.dirty.getAndSet(false)) {
+                jdbcTemplate.update("UPDATE site SET page_count = ?, lemma_count = ?, word_count = ? WHERE id = ?",
+                        counter.pages.get(), counter.lemmas.get(), counter.words.get(), siteId);
+            }
+        });
+    }
+
+    private Counter counter(Site site) {
+        return counters.computeIfAbsent(site.getId(), id -> new Counter(site.getPageCount(), site.getLemmaCount(),
+                site.getWordCount()));
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Ошибка при сохранении счетчиков сайтов", e);
+        }
+    }
+
+    private static class Counter {
+        private final AtomicInteger pages;
+        private final AtomicInteger lemmas;
+        private final AtomicLong words;
+        private final AtomicBoolean dirty = new AtomicBoolean();
+
+        Counter(int pages, int lemmas, long words) {
+            this.pages = new AtomicInteger(pages);
+            this.lemmas = new AtomicInteger(lemmas);
+            this.words = new AtomicLong(words);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package searchengine.services.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Управляет секциями таблиц page, page_content, lemma и index.
+ * <p>
+ * Таблицы секционированы по site_id, поэтому очистка сайта сводится к TRUNCATE или DROP
+ * его секций вместо построчного удаления, а запросы с условием на сайт читают только его секцию.
+ * <p>
+ * Внешние ключи между таблицами создаются между секциями одного сайта, а не на родительских таблицах:
+ * ключ на родительской таблице не дал бы очистить секции одного сайта без очистки всей ссылающейся таблицы.
+ * Секции сайта очищаются и удаляются одной командой, поэтому ключи между ними этому не мешают.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SitePartitionManager {
+    private static final List<String> TABLES = List.of("index", "page_content", "lemma", "page");
+    /** Внешние ключи секций сайта: таблица, имя ключа и его определение, %s заменяется на id сайта. */
+    private static final List<String[]> FOREIGN_KEYS = List.of(
+            new String[]{"page_content", "fk_page_content_%s_page",
+                    "FOREIGN KEY (page_id, site_id) REFERENCES page_%s (id, site_id) ON DELETE CASCADE"},
+            new String[]{"index", "fk_index_%s_page",
+                    "FOREIGN KEY (page_id, site_id) REFERENCES page_%s (id, site_id) ON DELETE CASCADE"},
+            new String[]{"index", "fk_index_%s_lemma",
+                    "FOREIGN KEY (lemma_id, site_id) REFERENCES lemma_%s (id, site_id) ON DELETE CASCADE"},
+            new String[]{"page", "fk_page_%s_duplicate_of",
+                    "FOREIGN KEY (duplicate_of, site_id) REFERENCES page_%s (id, site_id) ON DELETE SET NULL (duplicate_of)"});
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Создает секции сайта и внешние ключи между ними, если их еще нет.
+     */
+    public void createPartitions(int siteId) {
+        for (String table : TABLES) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partition(table, siteId)
+                    + " PARTITION OF \"" + table + "\" FOR VALUES IN (" + siteId + ")");
+        }
+        for (String[] foreignKey : FOREIGN_KEYS) {
+            String name = foreignKey[1].formatted(siteId);
+            Integer existing = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM pg_constraint WHERE conname = ?", Integer.class, name);
+            if (existing == null || existing == 0) {
+                jdbcTemplate.execute("ALTER TABLE " + partition(foreignKey[0], siteId) + " ADD CONSTRAINT " + name
+                        + " " + foreignKey[2].formatted(siteId));
+            }
+        }
+    }
+
+    /**
+     * Очищает все данные сайта, оставляя его секции на месте.
+     */
+    public void truncatePartitions(int siteId) {
+        jdbcTemplate.execute("TRUNCATE " + partitions(siteId));
+        log.info("Очищены секции сайта id={}", siteId);
+    }
+
+    /**
+     * Удаляет секции сайта вместе с данными.
+     */
+    public void dropPartitions(int siteId) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + partitions(siteId));
+        log.info("Удалены секции сайта id={}", siteId);
+    }
+
+    /**
+     * Удаляет все сайты вместе с их секциями и контрольными точками обхода.
+     */
+    public void dropAll() {
+        List<Integer> siteIds = jdbcTemplate.queryForList("SELECT id FROM site", Integer.class);
+        siteIds.forEach(this::dropPartitions);
+        jdbcTemplate.execute("TRUNCATE site, crawl_checkpoint, page, page_content, lemma, \"index\"");
+        log.info("База данных очищена, удалено сайтов: {}", siteIds.size());
+    }
+
+    private String partitions(int siteId) {
+        return TABLES.stream().map(table -> partition(table, siteId)).collect(Collectors.joining(", "));
+    }
+
+    private static String partition(String table, int siteId) {
+        return table + "_" + siteId;
+    }
+}
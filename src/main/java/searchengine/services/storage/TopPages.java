@@ -0,0 +1,118 @@
+package searchengine.services.storage;
+
+/**
+ * Отбирает k самых релевантных страниц за один проход по найденным страницам.
+ * <p>
+ * Отобранные страницы хранятся в куче на массивах, на вершине которой худшая из них,
+ * поэтому каждая новая страница обходится в O(log k), а полная сортировка всех найденных
+ * страниц не нужна. При равной релевантности выше страница с меньшим id.
+ * Общее число найденных страниц передается отдельно через {@link #countMatches}.
+ */
+public class TopPages {
+    private final int capacity;
+    private final int[] pageIds;
+    private final double[] relevance;
+    private int size;
+    private int total;
+    private double maxRelevance;
+
+    public TopPages(int capacity) {
+        this.capacity = Math.max(capacity, 0);
+        this.pageIds = new int[this.capacity];
+        this.relevance = new double[this.capacity];
+    }
+
+    /**
+     * Учитывает найденные страницы в общем числе, в том числе те, которые не будут предложены в {@link #offer}.
+     */
+    public void countMatches(int count) {
+        total += count;
+    }
+
+    public void offer(int pageId, double pageRelevance) {
+        maxRelevance = Math.max(maxRelevance, pageRelevance);
+        if (size < capacity) {
+            pageIds[size] = pageId;
+            relevance[size] = pageRelevance;
+            siftUp(size++);
+        } else if (capacity > 0 && isWorse(pageIds[0], relevance[0], pageId, pageRelevance)) {
+            pageIds[0] = pageId;
+            relevance[0] = pageRelevance;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @return релевантность, которую должна превысить страница, чтобы попасть в отобранные
+     */
+    public double threshold() {
+        return size < capacity ? Double.NEGATIVE_INFINITY : capacity > 0 ? relevance[0] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return отобранные страницы по убыванию релевантности
+     */
+    public RankedPages toRankedPages() {
+        int[] sortedIds = new int[size];
+        double[] sortedRelevance = new double[size];
+        TopPages heap = copy();
+        // Из кучи страницы извлекаются от худшей к лучшей
+        for (int i = size - 1; i >= 0; i--) {
+            sortedIds[i] = heap.pageIds[0];
+            sortedRelevance[i] = heap.relevance[0];
+            heap.size--;
+            heap.pageIds[0] = heap.pageIds[heap.size];
+            heap.relevance[0] = heap.relevance[heap.size];
+            heap.siftDown(0);
+        }
+        return new RankedPages(total, maxRelevance, sortedIds, sortedRelevance);
+    }
+
+    private TopPages copy() {
+        TopPages copy = new TopPages(capacity);
+        System.arraycopy(pageIds, 0, copy.pageIds, 0, size);
+        System.arraycopy(relevance, 0, copy.relevance, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    private static boolean isWorse(int pageId, double pageRelevance, int otherId, double otherRelevance) {
+        return pageRelevance < otherRelevance || (pageRelevance == otherRelevance && pageId > otherId);
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (!isWorse(pageIds[position], relevance[position], pageIds[parent], relevance[parent])) {
+                return;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int worst = position;
+            for (int child = 2 * position + 1; child <= 2 * position + 2 && child < size; child++) {
+                if (isWorse(pageIds[child], relevance[child], pageIds[worst], relevance[worst])) {
+                    worst = child;
+                }
+            }
+            if (worst == position) {
+                return;
+            }
+            swap(position, worst);
+            position = worst;
+        }
+    }
+
+    private void swap(int first, int second) {
+        int id = pageIds[first];
+        pageIds[first] = pageIds[second];
+        pageIds[second] = id;
+        double value = relevance[first];
+        relevance[first] = relevance[second];
+        relevance[second] = value;
+    }
+}
@@ -0,0 +1,170 @@
+package searchengine.services.storage.mapped;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import searchengine.config.IndexStoreSettings;
+import searchengine.exceptions.IndexingException;
+import searchengine.model.Site;
+import searchengine.services.storage.IndexStore;
+import searchengine.services.storage.SiteCounters;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Встроенное хранилище индекса: у каждого сайта свой каталог с сегментами - файлами словаря
+ * и списков страниц, которые отображаются в память. Таблицы lemma и index при этом не используются.
+ * <p>
+ * Изменения пишутся новыми сегментами, а фоновый поток объединяет мелкие сегменты в крупные,
+ * поэтому запись страницы не переписывает уже сохраненный индекс и не мешает поиску.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "index-store", name = "type", havingValue = "mapped")
+public class MappedIndexStore implements IndexStore {
+    private final IndexStoreSettings settings;
+    private final SiteCounters siteCounters;
+
+    private final Map<Integer, MappedSiteIndex> sites = new ConcurrentHashMap<>();
+    private ScheduledExecutorService merger;
+
+    @PostConstruct
+    void startMerger() {
+        long interval = settings.getMergeIntervalMs();
+        merger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "index-segment-merger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        merger.scheduleWithFixedDelay(this::mergeSegments, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void close() {
+        merger.shutdownNow();
+        flush();
+    }
+
+    private void mergeSegments() {
+        int mergeFactor = Math.max(2, settings.getSegmentMergeFactor());
+        sites.forEach((siteId, index) -> {
+            try {
+                while (index.merge(mergeFactor)) {
+                    log.debug("Выполнено слияние сегментов индекса сайта id={}", siteId);
+                }
+            } catch (IOException e) {
+                log.error("Ошибка при слиянии сегментов индекса сайта id={}", siteId, e);
+            }
+        });
+    }
+
+    @Override
+    public void addPage(Site site, int pageId, Map<String, Integer> lemmas) {
+        int newLemmas = index(site).addPage(pageId, lemmas);
+        if (newLemmas > 0) {
+            siteCounters.addLemmas(site, newLemmas);
+        }
+    }
+
+    @Override
+    public void updatePage(Site site, int pageId, Map<String, Integer> lemmas) {
+        removePage(site, pageId);
+        addPage(site, pageId, lemmas);
+    }
+
+    @Override
+    public void removePage(Site site, int pageId) {
+        int lostLemmas = index(site).removePage(pageId);
+        if (lostLemmas > 0) {
+            siteCounters.addLemmas(site, -lostLemmas);
+        }
+    }
+
+    @Override
+    public int getFrequency(Site site, String lemma) {
+        return index(site).getFrequency(lemma);
+    }
+
+    @Override
+    public Map<Integer, Float> getPostings(Site site, String lemma) {
+        return index(site).getPostings(lemma);
+    }
+
+    @Override
+    public void scan(Site site, PostingVisitor visitor) {
+        index(site).scan(visitor);
+    }
+
+    @Override
+    public void flush() {
+        sites.forEach((siteId, index) -> {
+            try {
+                index.flush();
+            } catch (IOException e) {
+                log.error("Ошибка при записи индекса сайта id={}", siteId, e);
+            }
+        });
+    }
+
+    @Override
+    public void complete(Site site) {
+        try {
+            index(site).flush();
+        } catch (IOException e) {
+            throw new IndexingException("Ошибка при записи индекса сайта " + site.getUrl(), e);
+        }
+    }
+
+    @Override
+    public void resetSite(Site site) {
+        MappedSiteIndex index = sites.remove(site.getId());
+        if (index != null) {
+            index.close();
+        }
+        delete(directory(site.getId()));
+    }
+
+    @Override
+    public void resetAll() {
+        sites.values().forEach(MappedSiteIndex::close);
+        sites.clear();
+        delete(Path.of(settings.getDirectory()));
+    }
+
+    private MappedSiteIndex index(Site site) {
+        return sites.computeIfAbsent(site.getId(), siteId -> {
+            try {
+                MappedSiteIndex index = MappedSiteIndex.open(directory(siteId));
+                // Сохраненное число лемм могло разойтись с сегментами до перезапуска
+                siteCounters.setLemmas(site, index.countLemmas());
+                return index;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private Path directory(int siteId) {
+        return Path.of(settings.getDirectory(), String.valueOf(siteId));
+    }
+
+    private void delete(Path path) {
+        try {
+            FileSystemUtils.deleteRecursively(path);
+        } catch (IOException e) {
+            throw new IndexingException("Не удалось удалить каталог индекса " + path, e);
+        }
+    }
+}
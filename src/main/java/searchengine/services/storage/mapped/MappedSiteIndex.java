@@ -0,0 +1,449 @@
+package searchengine.services.storage.mapped;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.services.storage.IndexStore;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Индекс одного сайта: неизменяемые сегменты {@link Segment} и изменения поверх них,
+ * накопленные в памяти с последней записи.
+ * <p>
+ * Изменения - это новые списки страниц по леммам и множество удаленных страниц.
+ * При {@link #flush()} они записываются новым небольшим сегментом, старые сегменты не переписываются.
+ * Удаленные страницы сегмента скрывают записи всех более старых сегментов, поэтому обновленная
+ * страница в поиске берется только из самого нового сегмента. Мелкие сегменты объединяются
+ * в фоне методом {@link #merge(int)}.
+ * <p>
+ * Число страниц каждой леммы хранится в памяти и меняется при добавлении и удалении страниц:
+ * леммы удаляемой страницы берутся из таблиц страниц сегментов, поэтому ни частота, ни число лемм
+ * не требуют прохода по спискам страниц.
+ */
+@Slf4j
+class MappedSiteIndex {
+    private static final String LEGACY_FILE_NAME = "postings.dat";
+    /** Сегменты до этого числа записей считаются одним, самым нижним уровнем. */
+    private static final long MIN_TIER_POSTINGS = 1_000;
+
+    private final Path directory;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object mergeLock = new Object();
+    /** Сегменты от старых к новым. Список не изменяется, при изменении заменяется целиком. */
+    private List<Segment> segments;
+    /** Для каждого сегмента - страницы, удаленные в более новых сегментах. */
+    private List<Set<Integer>> shadowed;
+    private long nextGeneration;
+    private boolean closed;
+    private Map<String, Map<Integer, Float>> added = new HashMap<>();
+    private Map<Integer, Set<String>> addedByPage = new HashMap<>();
+    private Set<Integer> removed = new HashSet<>();
+    /** Число видимых страниц каждой леммы, леммы без страниц в нем не хранятся. */
+    private final Map<String, Integer> frequencies = new HashMap<>();
+
+    private MappedSiteIndex(Path directory, List<Segment> segments) {
+        this.directory = directory;
+        setSegments(segments);
+        this.nextGeneration = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).maxGeneration() + 1;
+    }
+
+    static MappedSiteIndex open(Path directory) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path path : files) {
+                    if (path.getFileName().toString().endsWith(".tmp")) {
+                        Files.delete(path);
+                        continue;
+                    }
+                    Segment segment = path.getFileName().toString().equals(LEGACY_FILE_NAME)
+                            ? new Segment(path, 0, 0, PostingsFile.open(path))
+                            : Segment.open(path);
+                    if (segment != null) {
+                        segments.add(segment);
+                    }
+                }
+            }
+        }
+        // После сбоя во время слияния могли остаться исходные сегменты рядом с результатом
+        List<Segment> obsolete = segments.stream()
+                .filter(segment -> segments.stream().anyMatch(other -> other.covers(segment))).toList();
+        for (Segment segment : obsolete) {
+            Files.deleteIfExists(segment.path());
+        }
+        segments.removeAll(obsolete);
+        segments.sort(Comparator.comparingLong(Segment::maxGeneration));
+        MappedSiteIndex index = new MappedSiteIndex(directory, segments);
+        index.upgradeSegments();
+        index.countFrequencies();
+        return index;
+    }
+
+    /**
+     * Переписывает сегменты старых версий, в которых нет таблицы страниц. Выполняется один раз.
+     */
+    private void upgradeSegments() throws IOException {
+        List<Segment> upgraded = new ArrayList<>(segments);
+        for (int i = 0; i < upgraded.size(); i++) {
+            Segment segment = upgraded.get(i);
+            if (!segment.file().hasPageIndex()) {
+                Segment rewritten = mergeSegments(List.of(segment), i == 0);
+                if (!rewritten.path().equals(segment.path())) {
+                    Files.deleteIfExists(segment.path());
+                }
+                upgraded.set(i, rewritten);
+                log.info("Сегмент {} переписан в формат с таблицей страниц", rewritten.path());
+            }
+        }
+        setSegments(upgraded);
+    }
+
+    /**
+     * Считает страницы лемм по словарям сегментов и вычитает страницы, скрытые более новыми сегментами.
+     */
+    private void countFrequencies() {
+        for (int i = 0; i < segments.size(); i++) {
+            PostingsFile file = segments.get(i).file();
+            for (String lemma : file.lemmas()) {
+                frequencies.merge(lemma, file.count(lemma), Integer::sum);
+            }
+            for (int pageId : shadowed.get(i)) {
+                file.forEachLemma(pageId, this::decrementFrequency);
+            }
+        }
+    }
+
+    /**
+     * @return 1, если лемма до этого не встречалась ни на одной странице, иначе 0
+     */
+    private int incrementFrequency(String lemma) {
+        return frequencies.merge(lemma, 1, Integer::sum) == 1 ? 1 : 0;
+    }
+
+    /**
+     * @return 1, если у леммы не осталось страниц, иначе 0
+     */
+    private int decrementFrequency(String lemma) {
+        return frequencies.computeIfPresent(lemma, (key, frequency) -> frequency > 1 ? frequency - 1 : null) == null
+                ? 1 : 0;
+    }
+
+    /**
+     * Добавляет страницу.
+     *
+     * @return сколько лемм до этой страницы не было ни на одной странице сайта
+     */
+    int addPage(int pageId, Map<String, Integer> lemmas) {
+        lock.writeLock().lock();
+        try {
+            int newLemmas = 0;
+            for (Map.Entry<String, Integer> entry : lemmas.entrySet()) {
+                String lemma = entry.getKey();
+                if (added.computeIfAbsent(lemma, key -> new HashMap<>())
+                        .put(pageId, entry.getValue().floatValue()) == null) {
+                    newLemmas += incrementFrequency(lemma);
+                }
+            }
+            addedByPage.computeIfAbsent(pageId, id -> new HashSet<>()).addAll(lemmas.keySet());
+            return newLemmas;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Удаляет страницу.
+     *
+     * @return сколько лемм после этого не осталось ни на одной странице сайта
+     */
+    int removePage(int pageId) {
+        lock.writeLock().lock();
+        try {
+            int[] lostLemmas = {0};
+            // Записи сегментов уже скрыты, если страница удалялась после последней записи
+            if (removed.add(pageId)) {
+                for (int i = 0; i < segments.size(); i++) {
+                    if (!shadowed.get(i).contains(pageId)) {
+                        segments.get(i).file().forEachLemma(pageId,
+                                lemma -> lostLemmas[0] += decrementFrequency(lemma));
+                    }
+                }
+            }
+            Set<String> lemmas = addedByPage.remove(pageId);
+            if (lemmas != null) {
+                for (String lemma : lemmas) {
+                    added.get(lemma).remove(pageId);
+                    lostLemmas[0] += decrementFrequency(lemma);
+                }
+            }
+            return lostLemmas[0];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int getFrequency(String lemma) {
+        lock.readLock().lock();
+        try {
+            return frequencies.getOrDefault(lemma, 0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Собирает страницы леммы по всем сегментам, от новых к старым: запись более нового сегмента
+     * заменяет старую, удаленные страницы пропускаются.
+     */
+    Map<Integer, Float> getPostings(String lemma) {
+        lock.readLock().lock();
+        try {
+            Map<Integer, Float> result = new HashMap<>(added.getOrDefault(lemma, Collections.emptyMap()));
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                Set<Integer> hidden = shadowed.get(i);
+                segments.get(i).file().forEach(lemma, (pageId, rank) -> {
+                    if (!removed.contains(pageId) && !hidden.contains(pageId)) {
+                        result.putIfAbsent(pageId, rank);
+                    }
+                });
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return число лемм, у которых есть хотя бы одна страница
+     */
+    int countLemmas() {
+        lock.readLock().lock();
+        try {
+            return frequencies.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void scan(IndexStore.PostingVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (String lemma : lemmas(segments)) {
+                getPostings(lemma).forEach((pageId, rank) -> visitor.accept(lemma, pageId, rank));
+            }
+            for (String lemma : added.keySet()) {
+                if (segments.stream().noneMatch(segment -> segment.file().contains(lemma))) {
+                    added.get(lemma).forEach((pageId, rank) -> visitor.accept(lemma, pageId, rank));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Записывает накопленные изменения новым сегментом.
+     */
+    void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed || (added.isEmpty() && removed.isEmpty())) {
+                return;
+            }
+            SortedMap<String, int[]> pageIds = new TreeMap<>();
+            Map<String, float[]> ranks = new HashMap<>();
+            added.forEach((lemma, postings) -> collect(lemma, postings, pageIds, ranks));
+            // Удаления нужны только чтобы скрыть записи старых сегментов
+            int[] tombstones = segments.isEmpty() ? new int[0] : sorted(removed);
+
+            long generation = nextGeneration++;
+            Segment segment = write(generation, generation, tombstones, pageIds, ranks);
+            List<Segment> next = new ArrayList<>(segments);
+            next.add(segment);
+            setSegments(next);
+            added = new HashMap<>();
+            addedByPage = new HashMap<>();
+            removed = new HashSet<>();
+            log.debug("Сегмент {} записан: {} лемм, {} удаленных страниц",
+                    segment.path(), pageIds.size(), tombstones.length);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Объединяет соседние сегменты одного уровня размера, если их набралось mergeFactor.
+     * Уровень сегмента - это логарифм числа его записей по основанию mergeFactor, поэтому
+     * каждая запись переписывается при слияниях не больше логарифма раз.
+     * Новый сегмент пишется без блокировки, под блокировкой только подменяется список.
+     *
+     * @return было ли выполнено слияние
+     */
+    boolean merge(int mergeFactor) throws IOException {
+        synchronized (mergeLock) {
+            List<Segment> current;
+            lock.readLock().lock();
+            try {
+                if (closed) {
+                    return false;
+                }
+                current = segments;
+            } finally {
+                lock.readLock().unlock();
+            }
+            int from = selectMerge(current, mergeFactor);
+            if (from < 0) {
+                return false;
+            }
+            List<Segment> inputs = current.subList(from, from + mergeFactor);
+            Segment merged = mergeSegments(inputs, from == 0);
+
+            lock.writeLock().lock();
+            try {
+                if (closed || segments.size() < from + mergeFactor
+                        || !segments.subList(from, from + mergeFactor).equals(inputs)) {
+                    Files.deleteIfExists(merged.path());
+                    return false;
+                }
+                List<Segment> next = new ArrayList<>(segments.subList(0, from));
+                next.add(merged);
+                next.addAll(segments.subList(from + mergeFactor, segments.size()));
+                setSegments(next);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            // Файлы остаются отображенными у читателей, которые еще работают со старым списком
+            for (Segment input : inputs) {
+                Files.deleteIfExists(input.path());
+            }
+            log.debug("Сегменты {}-{} объединены в {}: {} записей", inputs.get(0).minGeneration(),
+                    merged.maxGeneration(), merged.path(), merged.file().postingCount());
+            return true;
+        }
+    }
+
+    /**
+     * Помечает индекс закрытым: после этого он не пишет и не объединяет сегменты.
+     * Если слияние уже идет, дожидается его окончания.
+     */
+    void close() {
+        synchronized (mergeLock) {
+            lock.writeLock().lock();
+            try {
+                closed = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private int selectMerge(List<Segment> candidates, int mergeFactor) {
+        int bestFrom = -1;
+        int bestTier = Integer.MAX_VALUE;
+        int runStart = 0;
+        for (int i = 1; i <= candidates.size(); i++) {
+            int tier = tier(candidates.get(runStart).file().postingCount(), mergeFactor);
+            if (i < candidates.size() && tier(candidates.get(i).file().postingCount(), mergeFactor) == tier) {
+                continue;
+            }
+            if (i - runStart >= mergeFactor && tier < bestTier) {
+                bestTier = tier;
+                bestFrom = runStart;
+            }
+            runStart = i;
+        }
+        return bestFrom;
+    }
+
+    private static int tier(long postings, int mergeFactor) {
+        int tier = 0;
+        for (long size = MIN_TIER_POSTINGS; postings >= size * mergeFactor; size *= mergeFactor) {
+            tier++;
+        }
+        return tier;
+    }
+
+    private Segment mergeSegments(List<Segment> inputs, boolean oldest) throws IOException {
+        SortedMap<String, int[]> pageIds = new TreeMap<>();
+        Map<String, float[]> ranks = new HashMap<>();
+        List<Set<Integer>> hidden = shadowed(inputs);
+        for (String lemma : lemmas(inputs)) {
+            Map<Integer, Float> postings = new HashMap<>();
+            for (int i = inputs.size() - 1; i >= 0; i--) {
+                Set<Integer> inputHidden = hidden.get(i);
+                inputs.get(i).file().forEach(lemma, (pageId, rank) -> {
+                    if (!inputHidden.contains(pageId)) {
+                        postings.putIfAbsent(pageId, rank);
+                    }
+                });
+            }
+            collect(lemma, postings, pageIds, ranks);
+        }
+        // Удаления самого старого сегмента скрывать уже нечего
+        Set<Integer> tombstones = new HashSet<>();
+        if (!oldest) {
+            inputs.forEach(input -> Arrays.stream(input.file().tombstones()).forEach(tombstones::add));
+        }
+        return write(inputs.get(0).minGeneration(), inputs.get(inputs.size() - 1).maxGeneration(),
+                sorted(tombstones), pageIds, ranks);
+    }
+
+    private Segment write(long minGeneration, long maxGeneration, int[] tombstones,
+                          SortedMap<String, int[]> pageIds, Map<String, float[]> ranks) throws IOException {
+        Files.createDirectories(directory);
+        String name = Segment.fileName(minGeneration, maxGeneration);
+        Path target = directory.resolve(name);
+        Path temp = directory.resolve(name + ".tmp");
+        PostingsFile.write(temp, tombstones, pageIds, ranks);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new Segment(target, minGeneration, maxGeneration, PostingsFile.open(target));
+    }
+
+    private void setSegments(List<Segment> segments) {
+        this.segments = List.copyOf(segments);
+        this.shadowed = shadowed(this.segments);
+    }
+
+    private static List<Set<Integer>> shadowed(List<Segment> segments) {
+        List<Set<Integer>> result = new ArrayList<>(Collections.nCopies(segments.size(), Set.of()));
+        Set<Integer> newer = new HashSet<>();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            result.set(i, newer.isEmpty() ? Set.of() : Set.copyOf(newer));
+            Arrays.stream(segments.get(i).file().tombstones()).forEach(newer::add);
+        }
+        return result;
+    }
+
+    private static Set<String> lemmas(List<Segment> segments) {
+        Set<String> lemmas = new HashSet<>();
+        segments.forEach(segment -> segment.file().lemmas().forEach(lemmas::add));
+        return lemmas;
+    }
+
+    private static void collect(String lemma, Map<Integer, Float> postings,
+                                SortedMap<String, int[]> pageIds, Map<String, float[]> ranks) {
+        if (postings.isEmpty()) {
+            return;
+        }
+        TreeMap<Integer, Float> sorted = new TreeMap<>(postings);
+        int[] ids = new int[sorted.size()];
+        float[] values = new float[sorted.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Float> posting : sorted.entrySet()) {
+            ids[i] = posting.getKey();
+            values[i++] = posting.getValue();
+        }
+        pageIds.put(lemma, ids);
+        ranks.put(lemma, values);
+    }
+
+    private static int[] sorted(Set<Integer> pageIds) {
+        return pageIds.stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+}
@@ -0,0 +1,244 @@
+package searchengine.services.storage.mapped;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Неизменяемый файл со словарем лемм и списками страниц одного сайта, отображаемый в память.
+ * <p>
+ * Формат: заголовок (MAGIC, VERSION, число лемм, число удаленных страниц, число страниц, смещение
+ * таблицы страниц), затем id удаленных страниц по возрастанию, словарь из записей (длина леммы short,
+ * лемма в UTF-8, смещение списка int, длина списка int) по алфавиту и списки из пар (id страницы int,
+ * ранг float), упорядоченных по id страницы. В конце - обратная сторона индекса: таблица страниц
+ * по возрастанию id (id int, смещение int, число лемм int) и номера лемм каждой страницы в словаре.
+ * Удаленные страницы скрывают записи более старых файлов. В файлах версии 1 их нет,
+ * в файлах версий 1 и 2 нет таблицы страниц.
+ * Словарь при открытии читается в память, списки и таблица страниц читаются прямо из отображения.
+ */
+class PostingsFile {
+    private static final int MAGIC = 0x53454958;
+    private static final int LEGACY_VERSION = 1;
+    private static final int TOMBSTONES_VERSION = 2;
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 24;
+    private static final int POSTING_BYTES = 8;
+    private static final int PAGE_ENTRY_BYTES = 12;
+
+    private final MappedByteBuffer buffer;
+    private final Map<String, long[]> dictionary;
+    private final String[] lemmasByNumber;
+    private final int[] tombstones;
+    private final int pageCount;
+    /** Смещение таблицы страниц или -1, если в файле ее нет. */
+    private final int pagesOffset;
+    private final long postingCount;
+
+    private PostingsFile(MappedByteBuffer buffer, Map<String, long[]> dictionary, String[] lemmasByNumber,
+                         int[] tombstones, int pageCount, int pagesOffset) {
+        this.buffer = buffer;
+        this.dictionary = dictionary;
+        this.lemmasByNumber = lemmasByNumber;
+        this.tombstones = tombstones;
+        this.pageCount = pageCount;
+        this.pagesOffset = pagesOffset;
+        long count = 0;
+        for (long[] entry : dictionary.values()) {
+            count += entry[1];
+        }
+        this.postingCount = count;
+    }
+
+    static PostingsFile open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int version = buffer.getInt(4);
+        if (buffer.getInt(0) != MAGIC || version < LEGACY_VERSION || version > VERSION) {
+            throw new IOException("Неизвестный формат файла индекса " + file);
+        }
+        int lemmaCount = buffer.getInt(8);
+        int[] tombstones = new int[version >= TOMBSTONES_VERSION ? buffer.getInt(12) : 0];
+        int pageCount = version == VERSION ? buffer.getInt(16) : 0;
+        int pagesOffset = version == VERSION ? buffer.getInt(20) : -1;
+        int position = version == VERSION ? HEADER_BYTES : version == TOMBSTONES_VERSION ? 16 : 12;
+        for (int i = 0; i < tombstones.length; i++, position += 4) {
+            tombstones[i] = buffer.getInt(position);
+        }
+        Map<String, long[]> dictionary = new HashMap<>(lemmaCount * 2);
+        String[] lemmasByNumber = new String[lemmaCount];
+        for (int i = 0; i < lemmaCount; i++) {
+            int length = buffer.getShort(position) & 0xFFFF;
+            byte[] bytes = new byte[length];
+            buffer.get(position + 2, bytes);
+            position += 2 + length;
+            lemmasByNumber[i] = new String(bytes, StandardCharsets.UTF_8);
+            dictionary.put(lemmasByNumber[i], new long[]{buffer.getInt(position), buffer.getInt(position + 4)});
+            position += 8;
+        }
+        return new PostingsFile(buffer, dictionary, lemmasByNumber, tombstones, pageCount, pagesOffset);
+    }
+
+    /**
+     * Записывает удаленные страницы, словарь и списки в файл.
+     * Удаленные страницы и списки должны быть упорядочены по id страницы.
+     */
+    static void write(Path file, int[] tombstones, SortedMap<String, int[]> pageIds, Map<String, float[]> ranks)
+            throws IOException {
+        long dictionaryBytes = 0;
+        for (String lemma : pageIds.keySet()) {
+            dictionaryBytes += 2 + lemma.getBytes(StandardCharsets.UTF_8).length + 8;
+        }
+        long postingsOffset = HEADER_BYTES + (long) tombstones.length * 4 + dictionaryBytes;
+        // Номера лемм каждой страницы, леммы нумеруются в порядке словаря
+        SortedMap<Integer, List<Integer>> pageLemmas = new TreeMap<>();
+        long postings = 0;
+        int number = 0;
+        for (int[] ids : pageIds.values()) {
+            for (int pageId : ids) {
+                pageLemmas.computeIfAbsent(pageId, id -> new ArrayList<>()).add(number);
+            }
+            postings += ids.length;
+            number++;
+        }
+        long pagesOffset = postingsOffset + postings * POSTING_BYTES;
+        long total = pagesOffset + (long) pageLemmas.size() * PAGE_ENTRY_BYTES + postings * 4;
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Индекс сайта превышает 2 ГБ и не может быть отображен в память одним файлом");
+        }
+
+        try (OutputStream stream = Files.newOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(pageIds.size());
+            out.writeInt(tombstones.length);
+            out.writeInt(pageLemmas.size());
+            out.writeInt((int) pagesOffset);
+            for (int pageId : tombstones) {
+                out.writeInt(pageId);
+            }
+            long offset = postingsOffset;
+            for (Map.Entry<String, int[]> entry : pageIds.entrySet()) {
+                byte[] bytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(bytes.length);
+                out.write(bytes);
+                out.writeInt((int) offset);
+                out.writeInt(entry.getValue().length);
+                offset += (long) entry.getValue().length * POSTING_BYTES;
+            }
+            for (Map.Entry<String, int[]> entry : pageIds.entrySet()) {
+                int[] ids = entry.getValue();
+                float[] lemmaRanks = ranks.get(entry.getKey());
+                for (int i = 0; i < ids.length; i++) {
+                    out.writeInt(ids[i]);
+                    out.writeFloat(lemmaRanks[i]);
+                }
+            }
+            long lemmasOffset = pagesOffset + (long) pageLemmas.size() * PAGE_ENTRY_BYTES;
+            for (Map.Entry<Integer, List<Integer>> entry : pageLemmas.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt((int) lemmasOffset);
+                out.writeInt(entry.getValue().size());
+                lemmasOffset += (long) entry.getValue().size() * 4;
+            }
+            for (List<Integer> numbers : pageLemmas.values()) {
+                for (int lemmaNumber : numbers) {
+                    out.writeInt(lemmaNumber);
+                }
+            }
+        }
+    }
+
+    Iterable<String> lemmas() {
+        return dictionary.keySet();
+    }
+
+    boolean contains(String lemma) {
+        return dictionary.containsKey(lemma);
+    }
+
+    int count(String lemma) {
+        long[] entry = dictionary.get(lemma);
+        return entry != null ? (int) entry[1] : 0;
+    }
+
+    /**
+     * Передает в consumer все страницы леммы по возрастанию id.
+     */
+    void forEach(String lemma, PostingConsumer consumer) {
+        long[] entry = dictionary.get(lemma);
+        if (entry == null) {
+            return;
+        }
+        int position = (int) entry[0];
+        for (int i = 0; i < entry[1]; i++, position += POSTING_BYTES) {
+            consumer.accept(buffer.getInt(position), buffer.getFloat(position + 4));
+        }
+    }
+
+    /**
+     * @return есть ли в файле таблица страниц, нужная для {@link #forEachLemma}
+     */
+    boolean hasPageIndex() {
+        return pagesOffset >= 0;
+    }
+
+    /**
+     * Передает в consumer леммы страницы из этого файла. Таблица страниц ищется двоичным поиском
+     * прямо в отображении.
+     */
+    void forEachLemma(int pageId, Consumer<String> consumer) {
+        int low = 0;
+        int high = pageCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = pagesOffset + middle * PAGE_ENTRY_BYTES;
+            int middleId = buffer.getInt(entry);
+            if (middleId < pageId) {
+                low = middle + 1;
+            } else if (middleId > pageId) {
+                high = middle - 1;
+            } else {
+                int position = buffer.getInt(entry + 4);
+                int count = buffer.getInt(entry + 8);
+                for (int i = 0; i < count; i++, position += 4) {
+                    consumer.accept(lemmasByNumber[buffer.getInt(position)]);
+                }
+                return;
+            }
+        }
+    }
+
+    int size() {
+        return dictionary.size();
+    }
+
+    long postingCount() {
+        return postingCount;
+    }
+
+    int[] tombstones() {
+        return tombstones;
+    }
+
+    @FunctionalInterface
+    interface PostingConsumer {
+        void accept(int pageId, float rank);
+    }
+}
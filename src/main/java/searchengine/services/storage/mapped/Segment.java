@@ -0,0 +1,63 @@
+package searchengine.services.storage.mapped;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Неизменяемый сегмент индекса сайта: файл {@link PostingsFile} и диапазон поколений записей,
+ * которые в нем собраны. Сегмент, записанный из памяти, покрывает одно поколение,
+ * сегмент после слияния - весь диапазон поколений исходных сегментов.
+ */
+class Segment {
+    private static final Pattern NAME = Pattern.compile("segment-(\\d+)-(\\d+)\\.dat");
+
+    private final Path path;
+    private final long minGeneration;
+    private final long maxGeneration;
+    private final PostingsFile file;
+
+    Segment(Path path, long minGeneration, long maxGeneration, PostingsFile file) {
+        this.path = path;
+        this.minGeneration = minGeneration;
+        this.maxGeneration = maxGeneration;
+        this.file = file;
+    }
+
+    static String fileName(long minGeneration, long maxGeneration) {
+        return "segment-" + minGeneration + "-" + maxGeneration + ".dat";
+    }
+
+    /**
+     * Открывает файл сегмента, если его имя имеет вид segment-min-max.dat, иначе возвращает null.
+     */
+    static Segment open(Path path) throws IOException {
+        Matcher matcher = NAME.matcher(path.getFileName().toString());
+        if (!matcher.matches()) {
+            return null;
+        }
+        return new Segment(path, Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)),
+                PostingsFile.open(path));
+    }
+
+    boolean covers(Segment other) {
+        return this != other && minGeneration <= other.minGeneration && maxGeneration >= other.maxGeneration;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long minGeneration() {
+        return minGeneration;
+    }
+
+    long maxGeneration() {
+        return maxGeneration;
+    }
+
+    PostingsFile file() {
+        return file;
+    }
+}